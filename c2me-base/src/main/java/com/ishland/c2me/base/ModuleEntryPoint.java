@@ -103,6 +103,28 @@ public class ModuleEntryPoint {
                 .getLong(value, value, ConfigSystem.LongChecks.THREAD_COUNT);
     }
 
+    public static final long schedulerParallelism = new ConfigSystem.ConfigAccessor()
+            .key("scheduler.parallelism")
+            .comment("""
+                    
+                    The number of threads running scheduler lanes.
+                    Scheduler lanes run the no-tick view distance system and chunk statuses
+                    that aren't parallelized (lighting and unknown modded ones).
+                    Tasks of one lane never run concurrently, no matter how many threads there are.
+                    """.indent(1))
+            .getLong(1, 1, ConfigSystem.LongChecks.THREAD_COUNT);
+
+    public static final boolean perWorldSchedulerLanes = new ConfigSystem.ConfigAccessor()
+            .key("scheduler.perWorldLanes")
+            .comment("""
+                    
+                    Whether each world gets a scheduler lane of its own.
+                    Lanes take turns on the scheduler threads, so heavy generation in one world
+                    doesn't hold back scheduling in the others.
+                    When disabled, all worlds share a single lane, like before lanes existed.
+                    """.indent(1))
+            .getBoolean(true, false);
+
 //    public static int getDefaultGlobalExecutorParallelism() {
 //        return Math.max(1, Math.min(getDefaultParallelismCPU(), getDefaultParallelismHeap()));
 //    }
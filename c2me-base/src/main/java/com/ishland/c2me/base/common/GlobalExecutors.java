@@ -31,10 +31,12 @@ public class GlobalExecutors {
         }
     };
 
-    public static final ExecutorService asyncScheduler = new ThreadPoolExecutor(1, 1,
+    public static final int SCHEDULER_PARALLELISM = (int) ModuleEntryPoint.schedulerParallelism;
+    // runs scheduler lanes, see SchedulerLane
+    public static final ExecutorService asyncScheduler = new ThreadPoolExecutor(SCHEDULER_PARALLELISM, SCHEDULER_PARALLELISM,
             0L, TimeUnit.MILLISECONDS,
             new LinkedBlockingQueue<>(),
-            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("c2me-sched").build());
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat(SCHEDULER_PARALLELISM == 1 ? "c2me-sched" : "c2me-sched #%d").build());
 
 //    public static final TaskExecutor<Runnable> asyncSchedulerTaskExecutor = TaskExecutor.create(asyncScheduler, "c2me-sched");
 
@@ -0,0 +1,44 @@
+package com.ishland.c2me.base.common.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("minecraft.ChunkStorageIo")
+@Label("Chunk Storage I/O")
+@Category({"Minecraft", "Chunk Loading"})
+@StackTrace(false)
+@Enabled(false)
+public class ChunkStorageIoEvent extends Event {
+
+    public static final EventType TYPE = EventType.getEventType(ChunkStorageIoEvent.class);
+
+    @Name("storage")
+    @Label("Storage")
+    public final String storage;
+    @Name("stage")
+    @Label("Stage")
+    public String stage;
+    @Name("chunkPosX")
+    @Label("Chunk X Position")
+    public int chunkPosX;
+    @Name("chunkPosZ")
+    @Label("Chunk Z Position")
+    public int chunkPosZ;
+    @Name("chunks")
+    @Label("Chunks")
+    public int chunks;
+    @Name("bytes")
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    public ChunkStorageIoEvent(String storage) {
+        this.storage = storage;
+    }
+}
@@ -4,7 +4,13 @@ import com.ibm.asyncutil.util.Either;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.world.ChunkSerializer;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Executor;
 
 /**
  * Only used for c2me-threading-chunkio
@@ -14,6 +20,7 @@ public class SerializerAccess {
     private final static Serializer VANILLA = (world, chunk) -> Either.left(ChunkSerializer.serialize(world, chunk));
 
     private static Serializer activeSerializer = null;
+    private static Deserializer activeDeserializer = null;
 
     public static void registerSerializer(Serializer serializer) {
         if (serializer == null) {
@@ -29,10 +36,41 @@ public class SerializerAccess {
         return activeSerializer == null ? VANILLA : activeSerializer;
     }
 
+    public static void registerDeserializer(Deserializer deserializer) {
+        if (deserializer == null) {
+            throw new NullPointerException("deserializer");
+        } else if (activeDeserializer != null) {
+            throw new IllegalStateException("Deserializer already registered");
+        } else {
+            activeDeserializer = deserializer;
+        }
+    }
+
+    /**
+     * @return the registered deserializer, or null if chunks are only deserialized from NBT
+     */
+    @Nullable
+    public static Deserializer getDeserializer() {
+        return activeDeserializer;
+    }
+
     public interface Serializer {
 
         com.ibm.asyncutil.util.Either<NbtCompound, byte[]> serialize(ServerWorld world, Chunk chunk);
 
     }
 
+    public interface Deserializer {
+
+        /**
+         * Deserialize a chunk straight from its uncompressed NBT payload.
+         *
+         * @param mainThreadExecutor runs the tasks that have to run on the main thread
+         * @return the chunk, or null if the payload has to be read into NBT and deserialized by vanilla
+         */
+        @Nullable
+        ProtoChunk deserialize(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos pos, byte[] data, Executor mainThreadExecutor);
+
+    }
+
 }
@@ -1,53 +1,202 @@
 package com.ishland.c2me.base.common.scheduler;
 
+import com.ishland.c2me.base.common.GlobalExecutors;
 import com.ishland.c2me.base.common.structs.SimpleObjectPool;
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
 import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ReferenceArraySet;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
 import net.minecraft.util.math.ChunkPos;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Not thread safe.
+ * Thread safe chunk lock table, sharded into stripes of square chunk regions.
+ * <p>
+ * Areas are acquired all or nothing: a task whose area is partly locked holds nothing and
+ * queues up as a waiter on every chunk of its area instead. A chunk is only acquired by its
+ * oldest waiter, so tasks for overlapping areas get their chunks in the order they first
+ * found them busy, and a task arriving later can't take a chunk a waiter is queued for.
+ * The stripes an area covers are locked in ascending order, so two overlapping areas queue
+ * up in the same order on every chunk they share; the oldest waiter only ever waits for
+ * held chunks, so nothing deadlocks. Queueing up on a chunk and releasing it happen under
+ * the same stripe, so no release goes unnoticed.
  */
 public class NeighborLockingManager {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger("NeighborLockingManager");
+    // 4x4 chunk regions: the usual 5x5 area covers at most 4 stripes
+    private static final int REGION_SHIFT = 2;
+    private static final int STRIPE_COUNT = Math.max(16, Integer.highestOneBit(GlobalExecutors.GLOBAL_EXECUTOR_PARALLELISM * 4 - 1) << 1);
+    private static final int POOL_SIZE_PER_STRIPE = Math.max(16, 1024 / STRIPE_COUNT);
 
-    private final SimpleObjectPool<ReferenceArraySet<Runnable>> pool = new SimpleObjectPool<>(
-            pool -> new ReferenceArraySet<>(16),
-            ReferenceArraySet::clear,
-            1024
-    );
-    private final Long2ReferenceOpenHashMap<ReferenceArraySet<Runnable>> activeLocks = new Long2ReferenceOpenHashMap<>();
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    public NeighborLockingManager() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return the stripes covering the positions, in locking order
+     */
+    public int[] stripesOf(long[] positions) {
+        final IntSortedSet set = new IntAVLTreeSet();
+        for (long pos : positions) {
+            set.add(stripeOf(pos));
+        }
+        return set.toIntArray();
+    }
+
+    private static int stripeOf(long pos) {
+        final int regionX = ChunkPos.getPackedX(pos) >> REGION_SHIFT;
+        final int regionZ = ChunkPos.getPackedZ(pos) >> REGION_SHIFT;
+        int hash = regionX * 0x9E3779B9 + regionZ;
+        hash ^= hash >>> 16;
+        return hash & (STRIPE_COUNT - 1);
+    }
 
     public boolean isLocked(long pos) {
-        return activeLocks.containsKey(pos);
+        final Stripe stripe = this.stripes[stripeOf(pos)];
+        stripe.lock.lock();
+        try {
+            final ChunkLock lock = stripe.locks.get(pos);
+            return lock != null && lock.held;
+        } finally {
+            stripe.lock.unlock();
+        }
     }
 
-    public void acquireLock(long pos) {
-        if (isLocked(pos)) throw new IllegalStateException("Already locked");
-        activeLocks.put(pos, pool.alloc());
+    /**
+     * Lock every position, or none of them if any is held or has an older waiter, in which
+     * case the task queues up on all of them and is handed back by
+     * {@link #release(long[], int[])} or {@link #withdraw(long[], int[], ScheduledTask)} of a
+     * position it waits on. Calling this again keeps the task's place.
+     *
+     * @param stripes the stripes of the positions, see {@link #stripesOf(long[])}
+     * @return whether the positions were locked
+     */
+    public boolean tryAcquire(long[] positions, int[] stripes, ScheduledTask task) {
+        this.lockStripes(stripes);
+        try {
+            boolean blocked = false;
+            for (long pos : positions) {
+                final ChunkLock lock = this.stripes[stripeOf(pos)].locks.get(pos);
+                if (lock != null && (lock.held || !lock.waiters.isEmpty() && lock.waiters.first() != task)) {
+                    blocked = true;
+                    break;
+                }
+            }
+            for (long pos : positions) {
+                final Stripe stripe = this.stripes[stripeOf(pos)];
+                ChunkLock lock = stripe.locks.get(pos);
+                if (lock == null) {
+                    lock = stripe.pool.alloc();
+                    stripe.locks.put(pos, lock);
+                }
+                if (blocked) {
+                    lock.waiters.add(task);
+                } else {
+                    lock.waiters.remove(task);
+                    lock.held = true;
+                }
+            }
+            return !blocked;
+        } finally {
+            this.unlockStripes(stripes);
+        }
     }
 
-    public void releaseLock(long pos) {
-        if (!isLocked(pos)) throw new IllegalStateException("Not locked");
-        final ReferenceArraySet<Runnable> runnables = activeLocks.remove(pos);
-        for (Runnable runnable : runnables) {
-            try {
-                runnable.run();
-            } catch (Throwable t) {
-                LOGGER.error("Failed to notify lock release at chunk %s".formatted(new ChunkPos(pos)), t);
+    /**
+     * @param stripes the stripes of the positions, see {@link #stripesOf(long[])}
+     * @return the tasks waiting on any of the positions, oldest first
+     */
+    public Collection<ScheduledTask> release(long[] positions, int[] stripes) {
+        Collection<ScheduledTask> released = Collections.emptyList();
+        this.lockStripes(stripes);
+        try {
+            for (long pos : positions) {
+                final Stripe stripe = this.stripes[stripeOf(pos)];
+                final ChunkLock lock = stripe.locks.get(pos);
+                if (lock == null || !lock.held) throw new IllegalStateException("Not locked: " + new ChunkPos(pos));
+                lock.held = false;
+                released = stripe.unqueue(pos, lock, released);
             }
+        } finally {
+            this.unlockStripes(stripes);
         }
-        runnables.clear();
-        pool.release(runnables);
+        return released;
     }
 
-    public void addReleaseListener(long pos, Runnable runnable) {
-        if (!isLocked(pos)) throw new IllegalStateException("Not locked");
-        activeLocks.get(pos).add(runnable);
+    /**
+     * Give up the place of a task that won't acquire the positions anymore.
+     *
+     * @param stripes the stripes of the positions, see {@link #stripesOf(long[])}
+     * @return the tasks that waited behind it on any of the positions, oldest first
+     */
+    public Collection<ScheduledTask> withdraw(long[] positions, int[] stripes, ScheduledTask task) {
+        Collection<ScheduledTask> released = Collections.emptyList();
+        this.lockStripes(stripes);
+        try {
+            for (long pos : positions) {
+                final Stripe stripe = this.stripes[stripeOf(pos)];
+                final ChunkLock lock = stripe.locks.get(pos);
+                if (lock == null || !lock.waiters.remove(task) || lock.held) continue;
+                released = stripe.unqueue(pos, lock, released);
+            }
+        } finally {
+            this.unlockStripes(stripes);
+        }
+        return released;
+    }
+
+    private void lockStripes(int[] stripes) {
+        for (int stripe : stripes) {
+            this.stripes[stripe].lock.lock();
+        }
+    }
+
+    private void unlockStripes(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            this.stripes[stripes[i]].lock.unlock();
+        }
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Long2ReferenceOpenHashMap<ChunkLock> locks = new Long2ReferenceOpenHashMap<>();
+        private final SimpleObjectPool<ChunkLock> pool = new SimpleObjectPool<>(
+                pool -> new ChunkLock(),
+                ChunkLock::clear,
+                POOL_SIZE_PER_STRIPE
+        );
+
+        /**
+         * Hand the waiters of an unheld chunk to {@code released}, or drop the chunk if none.
+         */
+        private Collection<ScheduledTask> unqueue(long pos, ChunkLock lock, Collection<ScheduledTask> released) {
+            if (lock.waiters.isEmpty()) {
+                this.locks.remove(pos);
+                this.pool.release(lock);
+                return released;
+            }
+            if (released.isEmpty()) released = new ReferenceLinkedOpenHashSet<>();
+            released.addAll(lock.waiters);
+            return released;
+        }
+    }
+
+    private static class ChunkLock {
+        private boolean held;
+        // in the order they queued up; stay queued until they acquire or withdraw
+        private final ReferenceLinkedOpenHashSet<ScheduledTask> waiters = new ReferenceLinkedOpenHashSet<>(4);
+
+        private void clear() {
+            this.held = false;
+            this.waiters.clear();
+        }
     }
 
 }
@@ -11,15 +11,19 @@ import java.util.function.Supplier;
 public class NeighborLockingTask<T> implements ScheduledTask {
 
     private final SchedulingManager schedulingManager;
+    private final long target;
     private final long[] names;
+    private final int[] stripes;
     private final BooleanSupplier isCancelled;
     private final Supplier<CompletableFuture<T>> action;
     private final CompletableFuture<T> future = new CompletableFuture<>();
     private boolean acquired = false;
 
-    public NeighborLockingTask(SchedulingManager schedulingManager, long[] names, BooleanSupplier isCancelled, Supplier<CompletableFuture<T>> action) {
+    public NeighborLockingTask(SchedulingManager schedulingManager, long target, long[] names, BooleanSupplier isCancelled, Supplier<CompletableFuture<T>> action) {
         this.schedulingManager = schedulingManager;
+        this.target = target;
         this.names = names;
+        this.stripes = schedulingManager.getNeighborLockingManager().stripesOf(names);
         this.isCancelled = isCancelled;
         this.action = action;
 
@@ -31,23 +35,29 @@ public class NeighborLockingTask<T> implements ScheduledTask {
         if (this.isCancelled.getAsBoolean()) {
             // holder downgraded/unloaded: don't acquire (2r+1)^2 locks and run a full
             // generation nobody needs; consumers map CancellationException to UNLOADED_CHUNK
+            this.schedulingManager.withdraw(this.names, this.stripes, this);
             this.future.completeExceptionally(new CancellationException());
             return false;
         }
-        final NeighborLockingManager lockingManager = this.schedulingManager.getNeighborLockingManager();
-        for (long l : names) {
-            if (lockingManager.isLocked(l)) {
-                lockingManager.addReleaseListener(l, () -> this.schedulingManager.enqueue(this));
-                return false;
-            }
-        }
-        for (long l : names) {
-            lockingManager.acquireLock(l);
+        // when locked, this keeps its place on every chunk of the area and is queued again once
+        // a chunk it waits on is released
+        if (!this.schedulingManager.getNeighborLockingManager().tryAcquire(this.names, this.stripes, this)) {
+            return false;
         }
         acquired = true;
         return true;
     }
 
+    @Override
+    public int getPriority() {
+        return this.schedulingManager.getPriority(this.target);
+    }
+
+    @Override
+    public long getPosition() {
+        return this.target;
+    }
+
     @Override
     public void runTask() {
         if (!acquired) throw new IllegalStateException();
@@ -70,12 +80,7 @@ public class NeighborLockingTask<T> implements ScheduledTask {
     }
 
     private void releaseLocks() {
-        this.schedulingManager.getExecutor().execute(() -> {
-            final NeighborLockingManager lockingManager = this.schedulingManager.getNeighborLockingManager();
-            for (long l : names) {
-                lockingManager.releaseLock(l);
-            }
-        });
+        this.schedulingManager.release(this.names, this.stripes);
     }
 
     public CompletableFuture<T> getFuture() {
@@ -1,33 +1,40 @@
 package com.ishland.c2me.base.common.scheduler;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.ChunkStatus;
 
 public class PriorityUtils {
 
-    static final Logger LOGGER = LoggerFactory.getLogger("C2ME Priority System");
-
-    // int32 S0000000 000MNNNN LLLLLLLL DDDDDDDD
-    // S: sign bit always 0
+    // int32 00000000 00000000 00000000 MDDDDDDD
     // M: clear if in sync load range and set if not
-    // N: distance to sync load chunk
-    // L: load level
-    // D: distance to nearest player
-
-    private static final AtomicInteger priorityChanges = new AtomicInteger(0);
-
-    public static void notifyPriorityChange() {
-//        priorityChanges.incrementAndGet();
-    }
-
-    public static void notifyPriorityChange(int amount) {
-//        priorityChanges.addAndGet(amount);
+    // D: distance to nearest player, clamped
+    // lower values run first
+
+    public static final int PRIORITY_COUNT = 256;
+
+    private static final int MAX_DISTANCE = 127;
+    private static final int NOT_SYNC_LOAD = 1 << 7;
+    // a sync load waits on everything its dependencies need, up to empty chunks
+    static final int SYNC_LOAD_RANGE = ChunkStatus.getDistanceFromFull(ChunkStatus.EMPTY);
+
+    /**
+     * @param pos          the chunk the task is for
+     * @param syncLoad     the chunk the server thread is waiting on, or null
+     * @param playerChunks positions of the chunks players are in, see {@link ChunkPos#toLong()}
+     */
+    public static int priority(long pos, ChunkPos syncLoad, long[] playerChunks) {
+        final int x = ChunkPos.getPackedX(pos);
+        final int z = ChunkPos.getPackedZ(pos);
+        int distance = MAX_DISTANCE;
+        for (long player : playerChunks) {
+            distance = Math.min(distance, chebyshev(x, z, ChunkPos.getPackedX(player), ChunkPos.getPackedZ(player)));
+        }
+        final boolean inSyncLoadRange = syncLoad != null && chebyshev(x, z, syncLoad.x, syncLoad.z) <= SYNC_LOAD_RANGE;
+        return (inSyncLoadRange ? 0 : NOT_SYNC_LOAD) | distance;
     }
 
-    public static int priorityChangeSerial() {
-        return priorityChanges.get();
+    private static int chebyshev(int x0, int z0, int x1, int z1) {
+        return Math.max(Math.abs(x0 - x1), Math.abs(z0 - z1));
     }
 
 }
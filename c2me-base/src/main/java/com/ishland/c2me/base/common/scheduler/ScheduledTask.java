@@ -3,14 +3,27 @@ package com.ishland.c2me.base.common.scheduler;
 public interface ScheduledTask {
 
     /**
-     * Attempt to acquire whatever this task needs to run. Runs on the scheduler thread.
+     * Attempt to acquire whatever this task needs to run. Runs on a drainer of the
+     * {@link SchedulingManager} under its queue monitor, in dequeue order; keep it short.
      *
      * @return true if acquired and {@link #runTask()} may be invoked; false if the task
-     *         arranged its own re-enqueue (lock release listener) or completed itself
+     *         arranged its own re-enqueue (waiting on a lock) or completed itself
      *         (cancellation) — either way the caller is done with it for now
      */
     boolean tryPrepare();
 
     void runTask();
 
+    /**
+     * Called each time the task is queued, from any thread.
+     *
+     * @return the admission priority of this task, see {@link PriorityUtils}; lower runs first
+     */
+    int getPriority();
+
+    /**
+     * @return the chunk this task is for, see {@link net.minecraft.util.math.ChunkPos#toLong()}
+     */
+    long getPosition();
+
 }
@@ -0,0 +1,126 @@
+package com.ishland.c2me.base.common.scheduler;
+
+import com.ishland.c2me.base.ModuleEntryPoint;
+import com.ishland.c2me.base.common.GlobalExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serial executor running on the shared scheduler threads ({@link GlobalExecutors#asyncScheduler}).
+ * <p>
+ * Tasks of a lane run one at a time and in submission order, so state confined to a lane needs
+ * no locking, while different lanes run concurrently when there is more than one scheduler
+ * thread. A lane gives up its thread after a bounded turn and queues up behind the other lanes,
+ * so one busy lane can't hold back the rest.
+ */
+public class SchedulerLane implements Executor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Scheduler");
+
+    private static final int MAX_TASKS_PER_TURN = 64;
+    private static final long MAX_TURN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final ConcurrentSkipListMap<String, SchedulerLane> lanes = new ConcurrentSkipListMap<>();
+    private static final String SHARED = "shared";
+
+    /**
+     * @return the lane of the world, or the shared lane if worlds don't get their own
+     */
+    public static SchedulerLane forWorld(String name) {
+        return lanes.computeIfAbsent(ModuleEntryPoint.perWorldSchedulerLanes ? name : SHARED, SchedulerLane::new);
+    }
+
+    public static Collection<SchedulerLane> getLanes() {
+        return Collections.unmodifiableCollection(lanes.values());
+    }
+
+    private final String name;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final AtomicLong submittedTasks = new AtomicLong();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong yieldedTurns = new AtomicLong();
+
+    private SchedulerLane(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.queue.add(command);
+        this.submittedTasks.incrementAndGet();
+        this.schedule();
+    }
+
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            GlobalExecutors.asyncScheduler.execute(this::runTurn);
+        }
+    }
+
+    private void runTurn() {
+        final long start = System.nanoTime();
+        int ran = 0;
+        try {
+            Runnable task;
+            while (ran < MAX_TASKS_PER_TURN && System.nanoTime() - start < MAX_TURN_NANOS && (task = this.queue.poll()) != null) {
+                ran++;
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    LOGGER.error("Error running task in scheduler lane {}", this.name, t);
+                }
+            }
+        } finally {
+            this.busyNanos.addAndGet(System.nanoTime() - start);
+            this.completedTasks.addAndGet(ran);
+            this.turns.incrementAndGet();
+            this.scheduled.set(false);
+            // anything left or submitted meanwhile goes behind the turns of other lanes
+            if (!this.queue.isEmpty()) {
+                this.yieldedTurns.incrementAndGet();
+                this.schedule();
+            }
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getQueuedTasks() {
+        return this.submittedTasks.get() - this.completedTasks.get();
+    }
+
+    public long getCompletedTasks() {
+        return this.completedTasks.get();
+    }
+
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.busyNanos.get());
+    }
+
+    public long getTurns() {
+        return this.turns.get();
+    }
+
+    /**
+     * @return the turns that ended with tasks left, giving way to other lanes
+     */
+    public long getYieldedTurns() {
+        return this.yieldedTurns.get();
+    }
+
+}
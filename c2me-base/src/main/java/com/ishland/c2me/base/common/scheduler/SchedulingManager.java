@@ -1,35 +1,192 @@
 package com.ishland.c2me.base.common.scheduler;
 
+import com.ishland.c2me.base.common.GlobalExecutors;
+import com.ishland.c2me.base.common.structs.DynamicPriorityQueue;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.ChunkPos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
  * Per-world dispatcher for neighbor-locked worldgen tasks.
  * <p>
- * All lock state ({@link NeighborLockingManager}) is confined to the single-threaded
- * {@code c2me-sched} executor passed in here; nothing in this class or in
- * {@link NeighborLockingTask} is safe to drive from any other executor.
+ * Tasks are admitted in {@link PriorityUtils} order: chunks a sync load waits on first, then
+ * by distance to the nearest player. A task whose region is locked waits in the
+ * {@link NeighborLockingManager} and is queued again when the conflicting task finishes.
+ * Waiters keep their place on every chunk they wait on, so overlapping tasks still get their
+ * chunks first come, first served, as they did on the single scheduler thread.
  * <p>
- * Tasks run as soon as their neighbor locks are available; a task whose region is
- * locked registers a release listener and is re-enqueued when the conflicting task
- * finishes. There is no admission cap or priority ordering: concurrency is bounded
- * by the worker pool that the task suppliers dispatch onto, and field experience
- * showed the former priority queue never influenced scheduling in practice.
+ * Locking is thread safe, so the queue is drained on the executor passed in here by up to one
+ * drainer per thread of the global executor, and locks are released right where the task
+ * completes. Drainers try to lock in dequeue order, under the queue monitor; only running the
+ * task happens concurrently.
  */
-public class SchedulingManager {
+public class SchedulingManager implements ISyncLoadManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Scheduler");
+    private static final int MAX_DRAINERS = GlobalExecutors.GLOBAL_EXECUTOR_PARALLELISM;
 
     private final NeighborLockingManager neighborLockingManager = new NeighborLockingManager();
+    // guards itself, queuedByPosition and activeDrainers
+    private final DynamicPriorityQueue<ScheduledTask> queue = new DynamicPriorityQueue<>(PriorityUtils.PRIORITY_COUNT);
+    private final Long2ReferenceOpenHashMap<ReferenceArrayList<ScheduledTask>> queuedByPosition = new Long2ReferenceOpenHashMap<>();
     private final Executor executor;
+    private final SchedulerLane lane;
+    private int activeDrainers = 0;
+
+    private volatile long[] playerChunks = new long[0];
+    private volatile ChunkPos currentSyncLoad = null;
+    // sync loads the server thread is blocked on, outermost first; server thread only
+    private final ObjectArrayList<ChunkPos> syncLoads = new ObjectArrayList<>();
 
-    public SchedulingManager(Executor executor) {
+    /**
+     * @param executor where the queue is drained
+     * @param lane     the lane of the world, for work that must not run concurrently
+     */
+    public SchedulingManager(Executor executor, SchedulerLane lane) {
         this.executor = executor;
+        this.lane = lane;
     }
 
     public void enqueue(ScheduledTask task) {
-        this.executor.execute(() -> {
-            if (task.tryPrepare()) {
+        this.admit(Collections.singletonList(task));
+    }
+
+    void release(long[] positions, int[] stripes) {
+        final Collection<ScheduledTask> waiters = this.neighborLockingManager.release(positions, stripes);
+        if (!waiters.isEmpty()) this.admit(waiters);
+    }
+
+    void withdraw(long[] positions, int[] stripes, ScheduledTask task) {
+        final Collection<ScheduledTask> waiters = this.neighborLockingManager.withdraw(positions, stripes, task);
+        if (!waiters.isEmpty()) this.admit(waiters);
+    }
+
+    private void admit(Collection<ScheduledTask> tasks) {
+        int drainersToStart = 0;
+        synchronized (this.queue) {
+            for (ScheduledTask task : tasks) {
+                if (!this.queue.contains(task)) {
+                    this.queue.enqueue(task, task.getPriority());
+                    this.queuedByPosition.computeIfAbsent(task.getPosition(), unused -> new ReferenceArrayList<>(2)).add(task);
+                }
+            }
+            while (this.activeDrainers < MAX_DRAINERS && this.activeDrainers < this.queue.size()) {
+                this.activeDrainers++;
+                drainersToStart++;
+            }
+        }
+        for (int i = 0; i < drainersToStart; i++) {
+            this.executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            final ScheduledTask task;
+            boolean prepared = false;
+            synchronized (this.queue) {
+                task = this.queue.dequeue();
+                if (task == null) {
+                    this.activeDrainers--;
+                    return;
+                }
+                final long pos = task.getPosition();
+                final ReferenceArrayList<ScheduledTask> queuedHere = this.queuedByPosition.get(pos);
+                queuedHere.remove(task);
+                if (queuedHere.isEmpty()) this.queuedByPosition.remove(pos);
+                // under the monitor, so that a task dequeued later can't lock an overlapping area first
+                try {
+                    prepared = task.tryPrepare();
+                } catch (Throwable t) {
+                    LOGGER.error("Failed to prepare scheduled task", t);
+                }
+            }
+            if (!prepared) continue;
+            try {
                 task.runTask();
+            } catch (Throwable t) {
+                LOGGER.error("Failed to run scheduled task", t);
             }
-        });
+        }
+    }
+
+    public int getPriority(long pos) {
+        return PriorityUtils.priority(pos, this.currentSyncLoad, this.playerChunks);
+    }
+
+    /**
+     * Called on the server thread every tick.
+     */
+    public void updatePlayerPositions(List<? extends Entity> players) {
+        final long[] current = this.playerChunks;
+        boolean changed = current.length != players.size();
+        for (int i = 0; !changed && i < current.length; i++) {
+            changed = current[i] != players.get(i).getChunkPos().toLong();
+        }
+        if (!changed) return;
+        final long[] updated = new long[players.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = players.get(i).getChunkPos().toLong();
+        }
+        this.playerChunks = updated;
+    }
+
+    /**
+     * Called on the server thread before it blocks on {@code pos}. Sync loads nest when a task
+     * run while waiting blocks on another chunk, so every call must be paired with
+     * {@link #endSyncLoad()}.
+     */
+    public void beginSyncLoad(ChunkPos pos) {
+        this.syncLoads.push(pos);
+        this.setCurrentSyncLoad(pos);
+    }
+
+    /**
+     * Called on the server thread once the innermost sync load finished; the enclosing one, if
+     * any, becomes current again.
+     */
+    public void endSyncLoad() {
+        if (this.syncLoads.isEmpty()) return;
+        this.syncLoads.pop();
+        this.setCurrentSyncLoad(this.syncLoads.isEmpty() ? null : this.syncLoads.top());
+    }
+
+    private void setCurrentSyncLoad(ChunkPos pos) {
+        final ChunkPos previous = this.currentSyncLoad;
+        this.currentSyncLoad = pos;
+        // the tasks a sync load waits on are usually queued before it starts waiting
+        if (previous != null) this.reprioritizeAround(previous);
+        if (pos != null) this.reprioritizeAround(pos);
+    }
+
+    private void reprioritizeAround(ChunkPos center) {
+        final int range = PriorityUtils.SYNC_LOAD_RANGE;
+        synchronized (this.queue) {
+            if (this.queuedByPosition.isEmpty()) return;
+            for (int x = center.x - range; x <= center.x + range; x++) {
+                for (int z = center.z - range; z <= center.z + range; z++) {
+                    final ReferenceArrayList<ScheduledTask> queuedHere = this.queuedByPosition.get(ChunkPos.toLong(x, z));
+                    if (queuedHere == null) continue;
+                    for (ScheduledTask task : queuedHere) {
+                        this.queue.changePriority(task, task.getPriority());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public ChunkPos getCurrentSyncLoad() {
+        return this.currentSyncLoad;
     }
 
     public NeighborLockingManager getNeighborLockingManager() {
@@ -40,4 +197,14 @@ public class SchedulingManager {
         return executor;
     }
 
+    public SchedulerLane getLane() {
+        return this.lane;
+    }
+
+    public int getQueuedTasks() {
+        synchronized (this.queue) {
+            return this.queue.size();
+        }
+    }
+
 }
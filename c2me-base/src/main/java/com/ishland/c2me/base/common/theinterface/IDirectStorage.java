@@ -2,10 +2,35 @@ package com.ishland.c2me.base.common.theinterface;
 
 import net.minecraft.util.math.ChunkPos;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public interface IDirectStorage {
 
     public CompletableFuture<Void> setRawChunkData(ChunkPos pos, byte[] data);
 
+    /**
+     * @return a future that completes once the storage is ready to accept more chunk data
+     */
+    public default CompletableFuture<Void> getWriteBackpressure() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return whether {@link #getRawChunkData(ChunkPos)} is supported
+     */
+    public default boolean supportsRawChunkData() {
+        return false;
+    }
+
+    /**
+     * Read the uncompressed NBT payload of a chunk without parsing it.
+     * The returned array must not be modified.
+     *
+     * @return a future of the payload, empty if the chunk does not exist
+     */
+    public default CompletableFuture<Optional<byte[]>> getRawChunkData(ChunkPos pos) {
+        return CompletableFuture.failedFuture(new UnsupportedOperationException());
+    }
+
 }
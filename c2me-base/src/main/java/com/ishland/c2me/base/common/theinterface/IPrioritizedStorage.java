@@ -0,0 +1,35 @@
+package com.ishland.c2me.base.common.theinterface;
+
+import net.minecraft.util.math.ChunkPos;
+
+public interface IPrioritizedStorage {
+
+    // int32 00000000 00000000 00000000 LLLLLLTT
+    // L: chunk holder level, clamped to 63
+    // T: tie-break within a level, e.g. no-tick distance bucket
+    // lower values are served first
+    public static final int PRIORITY_COUNT = 256;
+
+    public static final int FULL_CHUNK_LEVEL = 33;
+
+    /**
+     * Priority of reads that carry no hint, e.g. entity and poi reads of chunks being made full.
+     */
+    public static final int DEFAULT_PRIORITY = forLevel(FULL_CHUNK_LEVEL);
+
+    public static int forLevel(int level) {
+        return forLevel(level, 3);
+    }
+
+    public static int forLevel(int level, int tieBreak) {
+        return (Math.max(0, Math.min(level, 63)) << 2) | Math.max(0, Math.min(tieBreak, 3));
+    }
+
+    /**
+     * Hint the priority of reads of a chunk. Raises the priority of a queued read, and
+     * if {@code sticky} also applies to the next read of the chunk if none is queued.
+     * Never lowers a priority.
+     */
+    public void prioritizeRead(ChunkPos pos, int priority, boolean sticky);
+
+}
@@ -0,0 +1,12 @@
+package com.ishland.c2me.base.mixin.access;
+
+import net.minecraft.world.chunk.light.ChunkLightProvider;
+import net.minecraft.world.chunk.light.LightStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(ChunkLightProvider.class)
+public interface IChunkLightProvider {
+    @Accessor
+    LightStorage<?> getLightStorage();
+}
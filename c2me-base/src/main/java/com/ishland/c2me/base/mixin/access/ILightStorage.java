@@ -0,0 +1,12 @@
+package com.ishland.c2me.base.mixin.access;
+
+import net.minecraft.world.chunk.ChunkToNibbleArrayMap;
+import net.minecraft.world.chunk.light.LightStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(LightStorage.class)
+public interface ILightStorage {
+    @Accessor
+    ChunkToNibbleArrayMap<?> getUncachedStorage();
+}
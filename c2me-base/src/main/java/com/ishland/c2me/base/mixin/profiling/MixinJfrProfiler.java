@@ -1,6 +1,7 @@
 package com.ishland.c2me.base.mixin.profiling;
 
 import com.ishland.c2me.base.common.profiling.ChunkLoadScheduleEvent;
+import com.ishland.c2me.base.common.profiling.ChunkStorageIoEvent;
 import com.ishland.c2me.base.common.profiling.IVanillaJfrProfiler;
 import jdk.jfr.Event;
 import net.minecraft.registry.RegistryKey;
@@ -29,6 +30,7 @@ public class MixinJfrProfiler implements IVanillaJfrProfiler {
     private void preInit(CallbackInfo ci) {
         ArrayList<Class<? extends Event>> copy = new ArrayList<>(EVENTS);
         copy.add(ChunkLoadScheduleEvent.class);
+        copy.add(ChunkStorageIoEvent.class);
         EVENTS = List.copyOf(copy);
     }
 
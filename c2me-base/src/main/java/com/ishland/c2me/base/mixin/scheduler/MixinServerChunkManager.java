@@ -0,0 +1,32 @@
+package com.ishland.c2me.base.mixin.scheduler;
+
+import com.ishland.c2me.base.common.scheduler.IVanillaChunkManager;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkStatus;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ServerChunkManager.class)
+public class MixinServerChunkManager {
+
+    @Shadow @Final public ThreadedAnvilChunkStorage threadedAnvilChunkStorage;
+
+    // require = 0: mods replacing getChunk only lose sync load prioritization
+    @Inject(method = "getChunk(IILnet/minecraft/world/chunk/ChunkStatus;Z)Lnet/minecraft/world/chunk/Chunk;", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerChunkManager$MainThreadExecutor;runTasks(Ljava/util/function/BooleanSupplier;)V"), require = 0)
+    private void beforeSyncLoad(int x, int z, ChunkStatus leastStatus, boolean create, CallbackInfoReturnable<Chunk> cir) {
+        ((IVanillaChunkManager) this.threadedAnvilChunkStorage).c2me$getSchedulingManager().beginSyncLoad(new ChunkPos(x, z));
+    }
+
+    @Inject(method = "getChunk(IILnet/minecraft/world/chunk/ChunkStatus;Z)Lnet/minecraft/world/chunk/Chunk;", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerChunkManager$MainThreadExecutor;runTasks(Ljava/util/function/BooleanSupplier;)V", shift = At.Shift.AFTER), require = 0)
+    private void afterSyncLoad(int x, int z, ChunkStatus leastStatus, boolean create, CallbackInfoReturnable<Chunk> cir) {
+        ((IVanillaChunkManager) this.threadedAnvilChunkStorage).c2me$getSchedulingManager().endSyncLoad();
+    }
+
+}
@@ -2,18 +2,39 @@ package com.ishland.c2me.base.mixin.scheduler;
 
 import com.ishland.c2me.base.common.GlobalExecutors;
 import com.ishland.c2me.base.common.scheduler.IVanillaChunkManager;
+import com.ishland.c2me.base.common.scheduler.SchedulerLane;
 import com.ishland.c2me.base.common.scheduler.SchedulingManager;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
 
 @Mixin(ThreadedAnvilChunkStorage.class)
 public class MixinThreadedAnvilChunkStorage implements IVanillaChunkManager {
 
-    private final SchedulingManager c2me$schedulingManager = new SchedulingManager(GlobalExecutors.asyncScheduler);
+    @Shadow @Final private ServerWorld world;
+
+    private SchedulingManager c2me$schedulingManager;
+
+    @Inject(method = "<init>", at = @At("RETURN"))
+    private void onInit(CallbackInfo ci) {
+        this.c2me$schedulingManager = new SchedulingManager(GlobalExecutors.executor, SchedulerLane.forWorld(this.world.getRegistryKey().getValue().toString()));
+    }
 
     @Override
     public SchedulingManager c2me$getSchedulingManager() {
         return this.c2me$schedulingManager;
     }
 
+    @Inject(method = "tick(Ljava/util/function/BooleanSupplier;)V", at = @At("HEAD"))
+    private void onTick(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        this.c2me$schedulingManager.updatePlayerPositions(this.world.getPlayers());
+    }
+
 }
@@ -1,6 +1,6 @@
 package com.ishland.c2me.notickvd.common;
 
-import com.ishland.c2me.base.common.GlobalExecutors;
+import com.ishland.c2me.base.common.scheduler.IVanillaChunkManager;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
@@ -34,7 +34,8 @@ public class NoTickSystem {
     final NoThreadScheduler noThreadScheduler = new NoThreadScheduler();
 
     private final AtomicBoolean isTicking = new AtomicBoolean();
-    final Executor executor = GlobalExecutors.asyncScheduler;
+    // the scheduler lane of the world, known once ticking
+    volatile Executor executor;
     private volatile LongSet noTickOnlyChunksSnapshot = LongSets.EMPTY_SET;
     private volatile boolean pendingPurge = false;
     private volatile long age = 0;
@@ -78,6 +79,9 @@ public class NoTickSystem {
     }
 
     public void tick(ThreadedAnvilChunkStorage tacs) {
+        if (this.executor == null) {
+            this.executor = ((IVanillaChunkManager) tacs).c2me$getSchedulingManager().getLane();
+        }
         tickScheduler();
         scheduleTick(tacs);
     }
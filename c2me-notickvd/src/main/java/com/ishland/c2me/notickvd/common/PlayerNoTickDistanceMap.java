@@ -1,7 +1,9 @@
 package com.ishland.c2me.notickvd.common;
 
 import com.ishland.c2me.base.common.structs.DynamicPriorityQueue;
+import com.ishland.c2me.base.common.theinterface.IPrioritizedStorage;
 import com.ishland.c2me.base.mixin.access.IThreadedAnvilChunkStorage;
+import com.ishland.c2me.base.mixin.access.IVersionedChunkStorage;
 import com.mojang.logging.LogUtils;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongIterator;
@@ -169,6 +171,7 @@ public class PlayerNoTickDistanceMap extends ChunkPosDistanceLevelPropagator {
             }
 
             if (this.managedChunkTickets.add(pos.toLong())) {
+                prioritizeRead(tacs, pos, distanceFromPlayer, closeChunkThreshold);
                 final CompletableFuture<Void> loadFuture = getChunkLoadFuture(tacs, pos, isCloseChunk);
                 if (isCloseChunk) {
                     this.closeChunkLoadFutures.add(loadFuture);
@@ -183,6 +186,19 @@ public class PlayerNoTickDistanceMap extends ChunkPosDistanceLevelPropagator {
         return hasUpdates;
     }
 
+    /**
+     * All no-tick chunks load at the same ticket level, so tell storage which of them
+     * are closer to a player: closest first, ahead of other loads at that level.
+     */
+    private static void prioritizeRead(ThreadedAnvilChunkStorage tacs, ChunkPos pos, int distanceFromPlayer, int closeChunkThreshold) {
+        if (((IVersionedChunkStorage) tacs).getWorker() instanceof IPrioritizedStorage storage) {
+            final int bucket = distanceFromPlayer <= closeChunkThreshold ? 0
+                    : distanceFromPlayer <= closeChunkThreshold * 2 ? 1
+                    : distanceFromPlayer <= closeChunkThreshold * 4 ? 2 : 3;
+            storage.prioritizeRead(pos, IPrioritizedStorage.forLevel(IPrioritizedStorage.FULL_CHUNK_LEVEL, bucket), true);
+        }
+    }
+
     private void removeTicket0(ChunkPos pos) {
         this.noTickSystem.mainBeforeTicketTicks.add(() -> this.chunkTicketManager.removeTicketWithLevel(TICKET_TYPE, pos, 33, pos));
     }
@@ -0,0 +1,335 @@
+package com.ishland.c2me.opts.chunkio.common;
+
+import com.ishland.c2me.base.common.GlobalExecutors;
+import com.ishland.c2me.base.common.structs.RawByteArrayOutputStream;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.world.storage.ChunkStreamVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Zlib chunk compression with a preset dictionary trained from the chunks of a region directory.
+ * <p>
+ * Each region directory gets its own dictionary, stored next to it as {@code <directory>.c2me-dict}
+ * once enough chunks have been sampled. Until then chunks are written as plain zlib under the same
+ * stream version. The dictionary id (the Adler-32 of the dictionary) is part of the zlib header,
+ * so decoding looks the dictionary up by id and plain zlib streams decode as usual. A dictionary
+ * file is never replaced once written, as chunks compressed with it depend on it.
+ */
+public class ChunkDictionary {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Chunk Dictionary");
+
+    public static final int STREAM_VERSION_ID = 100;
+
+    // deflate only looks back 32KiB, anything longer is wasted
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    private static final int SAMPLE_COUNT = 32;
+    private static final int MAX_SAMPLE_SIZE = 128 * 1024;
+    private static final int SEGMENT_SIZE = 32;
+    private static final int SEGMENT_STEP = 8;
+
+    private static final ConcurrentHashMap<Path, ChunkDictionary> byDirectory = new ConcurrentHashMap<>();
+    private static final Int2ObjectMap<byte[]> byId = Int2ObjectMaps.synchronize(new Int2ObjectOpenHashMap<>());
+
+    /**
+     * Registered stream version used for decoding. Encoding through it writes plain zlib,
+     * use {@link #getStreamVersion()} of a directory to write with its dictionary.
+     */
+    public static final ChunkStreamVersion STREAM_VERSION = ChunkStreamVersion.add(new ChunkStreamVersion(STREAM_VERSION_ID, ChunkDictionary::wrapInput, out -> new DictionaryDeflaterOutputStream(out, null, null)));
+
+    private final Path file;
+    private final ChunkStreamVersion streamVersion;
+    private final ObjectArrayList<byte[]> samples = new ObjectArrayList<>();
+    private volatile byte[] dictionary;
+    private volatile boolean sampling;
+
+    private ChunkDictionary(Path directory) {
+        this.file = directory.resolveSibling(directory.getFileName() + ".c2me-dict");
+        this.streamVersion = new ChunkStreamVersion(STREAM_VERSION_ID, ChunkDictionary::wrapInput, this::wrapOutput);
+        if (Files.exists(this.file)) {
+            try {
+                final byte[] dictionary = Files.readAllBytes(this.file);
+                register(dictionary);
+                this.dictionary = dictionary;
+            } catch (Throwable t) {
+                // never sample, or we would overwrite the dictionary existing chunks need
+                LOGGER.error("Failed to load chunk dictionary {}, chunks compressed with it cannot be read", this.file, t);
+            }
+        } else {
+            this.sampling = true;
+        }
+    }
+
+    public static void init() {
+    }
+
+    /**
+     * Get the dictionary of a region directory, loading it for decoding if it exists.
+     */
+    public static ChunkDictionary forDirectory(Path directory) {
+        return byDirectory.computeIfAbsent(directory.toAbsolutePath().normalize(), ChunkDictionary::new);
+    }
+
+    /**
+     * @return an unregistered stream version that compresses with the dictionary of this directory,
+     *         and samples chunks for training while there is none
+     */
+    public ChunkStreamVersion getStreamVersion() {
+        return this.streamVersion;
+    }
+
+    private OutputStream wrapOutput(OutputStream out) {
+        final byte[] dictionary = this.dictionary;
+        if (dictionary != null) return new DictionaryDeflaterOutputStream(out, dictionary, null);
+        return new DictionaryDeflaterOutputStream(out, null, this.sampling ? this : null);
+    }
+
+    private static InputStream wrapInput(InputStream in) throws IOException {
+        final DataInputStream input = new DataInputStream(in);
+        final int cmf = input.readUnsignedByte();
+        final int flg = input.readUnsignedByte();
+        if ((cmf & 0x0F) != Deflater.DEFLATED || ((cmf << 8) | flg) % 31 != 0) {
+            throw new IOException("Not a zlib stream");
+        }
+        // the zlib wrapper is consumed here so that the dictionary can be set up front,
+        // which leaves checking the trailing checksum to us
+        final Inflater inflater = new Inflater(true);
+        if ((flg & 0x20) != 0) {
+            final int id = input.readInt();
+            final byte[] dictionary = byId.get(id);
+            if (dictionary == null) {
+                inflater.end();
+                throw new IOException("Chunk was compressed with unknown dictionary %08x, is its .c2me-dict file missing?".formatted(id));
+            }
+            inflater.setDictionary(dictionary);
+        }
+        return new InflaterInputStream(input, inflater, 8192) {
+            private final Adler32 checksum = new Adler32();
+            private boolean verified;
+            private boolean closed;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int read = super.read(b, off, len);
+                if (read > 0) {
+                    this.checksum.update(b, off, read);
+                } else if (read < 0 && !this.verified) {
+                    this.verifyChecksum();
+                }
+                return read;
+            }
+
+            private void verifyChecksum() throws IOException {
+                this.verified = true;
+                // the trailer starts in the input the inflater was given but didn't consume
+                final int unconsumed = inflater.getRemaining();
+                int expected = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int b = i < unconsumed ? this.buf[this.len - unconsumed + i] & 0xFF : this.in.read();
+                    if (b < 0) throw new EOFException("Missing zlib checksum");
+                    expected = (expected << 8) | b;
+                }
+                if (expected != (int) this.checksum.getValue()) {
+                    throw new IOException("Chunk data is corrupted: zlib checksum mismatch");
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.closed) return;
+                this.closed = true;
+                try {
+                    // readers stop at the end of the NBT data, just short of the checksum
+                    if (!this.verified) {
+                        final byte[] skip = new byte[512];
+                        while (this.read(skip, 0, skip.length) >= 0) ;
+                    }
+                } finally {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            }
+        };
+    }
+
+    private static void register(byte[] dictionary) throws IOException {
+        final Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        final int id = (int) adler32.getValue();
+        synchronized (byId) {
+            final byte[] existing = byId.get(id);
+            if (existing != null && !Arrays.equals(existing, dictionary)) {
+                throw new IOException("Dictionary id %08x is already taken by another dictionary".formatted(id));
+            }
+            byId.put(id, dictionary);
+        }
+    }
+
+    private void addSample(byte[] sample) {
+        final byte[][] samples;
+        synchronized (this.samples) {
+            if (!this.sampling) return;
+            this.samples.add(sample);
+            if (this.samples.size() < SAMPLE_COUNT) return;
+            this.sampling = false;
+            samples = this.samples.toArray(byte[][]::new);
+            this.samples.clear();
+        }
+        GlobalExecutors.executor.execute(() -> train(samples));
+    }
+
+    private void train(byte[][] samples) {
+        try {
+            final byte[] dictionary = buildDictionary(samples);
+            if (Files.exists(this.file)) {
+                LOGGER.warn("Chunk dictionary {} appeared while training, not using it until restart", this.file);
+                return;
+            }
+            register(dictionary);
+            // the file must be durable before any chunk depends on it
+            final Path tmp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(dictionary);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(tmp, this.file, StandardCopyOption.ATOMIC_MOVE);
+            // and so must the rename, or chunks could outlive the file after a crash
+            try (FileChannel directory = FileChannel.open(this.file.getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+            this.dictionary = dictionary;
+            LOGGER.info("Trained {} byte chunk dictionary {} from {} chunks", dictionary.length, this.file, samples.length);
+        } catch (Throwable t) {
+            LOGGER.error("Failed to train chunk dictionary {}, chunks will be written without it", this.file, t);
+        }
+    }
+
+    /**
+     * Pick the segments shared by the most samples. The most common ones go last, as deflate
+     * encodes nearer matches in fewer bits.
+     */
+    private static byte[] buildDictionary(byte[][] samples) {
+        // segment hash -> number of samples containing it, and where it was first seen
+        final Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+        final Long2LongOpenHashMap firstSeen = new Long2LongOpenHashMap();
+        final LongOpenHashSet seenInSample = new LongOpenHashSet();
+        for (int i = 0; i < samples.length; i++) {
+            final byte[] sample = samples[i];
+            seenInSample.clear();
+            for (int offset = 0; offset + SEGMENT_SIZE <= sample.length; offset += SEGMENT_STEP) {
+                final long hash = hash(sample, offset);
+                if (!seenInSample.add(hash)) continue;
+                if (counts.addTo(hash, 1) == 0) {
+                    firstSeen.put(hash, ((long) i << 32) | offset);
+                }
+            }
+        }
+
+        final long[] candidates = counts.keySet().longStream().filter(hash -> counts.get(hash) > 1).toArray();
+        LongArrays.quickSort(candidates, (a, b) -> Integer.compare(counts.get(b), counts.get(a)));
+
+        // overlapping segments of one sample would store the same bytes twice
+        final BitSet[] taken = new BitSet[samples.length];
+        final ObjectArrayList<byte[]> picked = new ObjectArrayList<>();
+        int size = 0;
+        for (long hash : candidates) {
+            if (size + SEGMENT_SIZE > MAX_DICTIONARY_SIZE) break;
+            final long location = firstSeen.get(hash);
+            final int sample = (int) (location >>> 32);
+            final int offset = (int) location;
+            if (taken[sample] == null) taken[sample] = new BitSet();
+            if (taken[sample].get(offset, offset + SEGMENT_SIZE).cardinality() != 0) continue;
+            taken[sample].set(offset, offset + SEGMENT_SIZE);
+            picked.add(Arrays.copyOfRange(samples[sample], offset, offset + SEGMENT_SIZE));
+            size += SEGMENT_SIZE;
+        }
+
+        final byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] segment : picked) {
+            position -= segment.length;
+            System.arraycopy(segment, 0, dictionary, position, segment.length);
+        }
+        return dictionary;
+    }
+
+    private static long hash(byte[] bytes, int offset) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + SEGMENT_SIZE; i++) {
+            hash = (hash ^ bytes[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static class DictionaryDeflaterOutputStream extends DeflaterOutputStream {
+
+        private final ChunkDictionary sampleOwner;
+        private final RawByteArrayOutputStream sample;
+        private boolean closed;
+
+        private DictionaryDeflaterOutputStream(OutputStream out, byte[] dictionary, ChunkDictionary sampleOwner) {
+            super(out, createDeflater(dictionary), 8192);
+            this.sampleOwner = sampleOwner;
+            this.sample = sampleOwner != null ? new RawByteArrayOutputStream(8192) : null;
+        }
+
+        private static Deflater createDeflater(byte[] dictionary) {
+            final Deflater deflater = new Deflater();
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            return deflater;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            if (this.sample != null && this.sample.size() < MAX_SAMPLE_SIZE) {
+                this.sample.write(b, off, Math.min(len, MAX_SAMPLE_SIZE - this.sample.size()));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) return;
+            this.closed = true;
+            try {
+                super.close();
+            } finally {
+                this.def.end();
+            }
+            if (this.sampleOwner != null) this.sampleOwner.addSample(this.sample.toByteArray());
+        }
+    }
+
+}
@@ -26,6 +26,9 @@ public class Config {
                     1  for GZip (RFC1952) (Vanilla compatible)\s
                     2  for Zlib (RFC1950) (Vanilla default) (Vanilla compatible)\s
                     3  for Uncompressed (Fastest, but higher disk usage) (Vanilla compatible)\s
+                    100 for Zlib with a dictionary trained from the world's own chunks (NOT Vanilla compatible)\s
+                    The dictionary is stored next to each region directory as <directory>.c2me-dict\s
+                    and is required to read chunks written with it, even after switching away\s
                     \s
                     Original chunk data will still readable after modifying this option \s
                     as this option only affects newly stored chunks\s
@@ -33,6 +36,11 @@ public class Config {
                     """)
             .getLong(-1, -1);
 
+    /**
+     * Whether region files sync every write, replacing the vanilla choice
+     */
+    public static final boolean syncDiskWrites = Boolean.parseBoolean(System.getProperty("com.ishland.c2me.chunkio.syncDiskWrites", "false"));
+
     public static void init() {
     }
 
@@ -3,6 +3,8 @@ package com.ishland.c2me.opts.chunkio.common;
 import net.minecraft.world.storage.ChunkStreamVersion;
 import org.spongepowered.asm.mixin.MixinEnvironment;
 
+import java.nio.file.Path;
+
 // Don't load this too early
 public class ConfigConstants {
 
@@ -11,6 +13,9 @@ public class ConfigConstants {
     static {
         if (MixinEnvironment.getCurrentEnvironment().getPhase() != MixinEnvironment.Phase.DEFAULT) throw new IllegalStateException("Mixins not initialized yet");
 
+        // always registered so that dictionary compressed chunks stay readable after switching away
+        ChunkDictionary.init();
+
         if (Config.chunkStreamVersion == -1) {
             CHUNK_STREAM_VERSION = ChunkStreamVersion.DEFLATE;
         } else {
@@ -24,4 +29,12 @@ public class ConfigConstants {
         }
     }
 
+    /**
+     * @return the stream version to write chunks of a region directory with
+     */
+    public static ChunkStreamVersion chunkStreamVersionFor(Path directory) {
+        final ChunkDictionary dictionary = ChunkDictionary.forDirectory(directory);
+        return CHUNK_STREAM_VERSION == ChunkDictionary.STREAM_VERSION ? dictionary.getStreamVersion() : CHUNK_STREAM_VERSION;
+    }
+
 }
@@ -0,0 +1,33 @@
+package com.ishland.c2me.opts.chunkio.mixin.compression.chunk_dictionary;
+
+import com.ishland.c2me.opts.chunkio.common.ConfigConstants;
+import net.minecraft.world.storage.ChunkStreamVersion;
+import net.minecraft.world.storage.RegionFile;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.nio.file.Path;
+
+@Mixin(RegionFile.class)
+public class MixinRegionFile {
+
+    @Mutable
+    @Shadow @Final private ChunkStreamVersion outputChunkStreamVersion;
+
+    // applied regardless of the configured compression: chunks written with a
+    // dictionary must stay readable after switching back to another compression
+    @Inject(method = "<init>(Ljava/nio/file/Path;Ljava/nio/file/Path;Lnet/minecraft/world/storage/ChunkStreamVersion;Z)V", at = @At("RETURN"))
+    private void onPostInit(Path file, Path directory, ChunkStreamVersion outputChunkStreamVersion, boolean dsync, CallbackInfo ci) {
+        // also loads the directory's chunk dictionary for reading
+        final ChunkStreamVersion forDirectory = ConfigConstants.chunkStreamVersionFor(directory);
+        if (outputChunkStreamVersion == ConfigConstants.CHUNK_STREAM_VERSION) {
+            this.outputChunkStreamVersion = forDirectory;
+        }
+    }
+
+}
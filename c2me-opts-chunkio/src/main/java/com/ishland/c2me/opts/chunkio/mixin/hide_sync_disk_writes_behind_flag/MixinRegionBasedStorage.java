@@ -1,5 +1,6 @@
 package com.ishland.c2me.opts.chunkio.mixin.hide_sync_disk_writes_behind_flag;
 
+import com.ishland.c2me.opts.chunkio.common.Config;
 import net.minecraft.world.storage.RegionBasedStorage;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
@@ -17,7 +18,7 @@ public class MixinRegionBasedStorage {
 
     @Inject(method = "<init>", at = @At("RETURN"))
     private void onPostInit(CallbackInfo info) {
-        this.dsync = Boolean.parseBoolean(System.getProperty("com.ishland.c2me.chunkio.syncDiskWrites", "false"));
+        this.dsync = Config.syncDiskWrites;
     }
 
 }
@@ -2,7 +2,9 @@ package com.ishland.c2me.rewrites.chunk_serializer;
 
 import com.ibm.asyncutil.util.Either;
 import com.ishland.c2me.base.common.registry.SerializerAccess;
+import com.ishland.c2me.rewrites.chunk_serializer.common.ChunkDataDeserializer;
 import com.ishland.c2me.rewrites.chunk_serializer.common.ChunkDataSerializer;
+import com.ishland.c2me.rewrites.chunk_serializer.common.Config;
 import com.ishland.c2me.rewrites.chunk_serializer.common.NbtWriter;
 import net.minecraft.nbt.NbtElement;
 
@@ -13,8 +15,9 @@ public class TheMod implements net.fabricmc.api.ModInitializer {
             SerializerAccess.registerSerializer((world, chunk) -> {
                 NbtWriter nbtWriter = new NbtWriter();
                 try {
-                    // NbtWriter holds Unsafe-allocated native memory; a serialization
-                    // failure without release() leaks the buffer
+                    // NbtWriter writes into a pooled direct buffer, which counts against
+                    // MaxDirectMemorySize; release() hands it back to the pool of this thread
+                    // (or frees it when the pool is full), so skipping it on failure leaks it
                     nbtWriter.start(NbtElement.COMPOUND_TYPE);
                     ChunkDataSerializer.write(world, chunk, nbtWriter);
                     nbtWriter.finishCompound();
@@ -23,6 +26,9 @@ public class TheMod implements net.fabricmc.api.ModInitializer {
                     nbtWriter.release();
                 }
             });
+            if (Config.gcFreeChunkDeserializer) {
+                SerializerAccess.registerDeserializer(ChunkDataDeserializer::read);
+            }
         }
     }
 }
@@ -0,0 +1,693 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+import com.ishland.c2me.base.mixin.access.ISimpleTickScheduler;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IChunkSerializer;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IChunkTickScheduler;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IPalettedContainer;
+import com.mojang.serialization.Dynamic;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.state.property.Property;
+import net.minecraft.structure.StructureContext;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.LightType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.ReadOnlyChunk;
+import net.minecraft.world.chunk.ReadableContainer;
+import net.minecraft.world.chunk.UpgradeData;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+import net.minecraft.world.gen.GenerationStep;
+import net.minecraft.world.gen.carver.CarvingMask;
+import net.minecraft.world.gen.chunk.BelowZeroRetrogen;
+import net.minecraft.world.gen.chunk.BlendingData;
+import net.minecraft.world.gen.structure.Structure;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import net.minecraft.world.tick.ChunkTickScheduler;
+import net.minecraft.world.tick.SimpleTickScheduler;
+import net.minecraft.world.tick.Tick;
+import net.minecraft.world.tick.TickPriority;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+/**
+ * Loading counterpart of {@link ChunkDataSerializer}: reads sections, light, heightmaps, ticks and
+ * structure references straight from the uncompressed payload into the chunk, without building
+ * an NBT tree first. Small, rarely present subtrees (entities, block entities, structure starts,
+ * post-processing, carving masks) are still read as NBT and handed to the vanilla code for them.
+ * <p>
+ * Anything this reader does not understand, e.g. data of another version,
+ * unknown entries added by other mods or entries vanilla would only partially recover, is left
+ * to {@link ChunkSerializer#deserialize} by returning null, before anything is applied to the world.
+ */
+@SuppressWarnings("JavadocReference")
+public final class ChunkDataDeserializer {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final byte[] STRING_DATA_VERSION = NbtWriter.getAsciiStringBytes("DataVersion");
+    private static final byte[] STRING_X_POS = NbtWriter.getAsciiStringBytes("xPos");
+    private static final byte[] STRING_Y_POS = NbtWriter.getAsciiStringBytes("yPos");
+    private static final byte[] STRING_Z_POS = NbtWriter.getAsciiStringBytes("zPos");
+    private static final byte[] STRING_LAST_UPDATE = NbtWriter.getAsciiStringBytes("LastUpdate");
+    private static final byte[] STRING_INHABITED_TIME = NbtWriter.getAsciiStringBytes("InhabitedTime");
+    private static final byte[] STRING_STATUS = NbtWriter.getAsciiStringBytes("Status");
+    private static final byte[] STRING_IS_LIGHT_ON = NbtWriter.getAsciiStringBytes("isLightOn");
+    private static final byte[] STRING_SHOULD_SAVE = NbtWriter.getAsciiStringBytes("shouldSave");
+    private static final byte[] STRING_BLOCK_ENTITIES = NbtWriter.getAsciiStringBytes("block_entities");
+    private static final byte[] STRING_PALETTE = NbtWriter.getAsciiStringBytes("palette");
+    private static final byte[] STRING_DATA = NbtWriter.getAsciiStringBytes("data");
+    private static final byte[] STRING_SECTIONS = NbtWriter.getAsciiStringBytes("sections");
+    private static final byte[] STRING_BLOCK_STATES = NbtWriter.getAsciiStringBytes("block_states");
+    private static final byte[] STRING_BIOMES = NbtWriter.getAsciiStringBytes("biomes");
+    private static final byte[] STRING_BLOCK_LIGHT = NbtWriter.getAsciiStringBytes("BlockLight");
+    private static final byte[] STRING_SKY_LIGHT = NbtWriter.getAsciiStringBytes("SkyLight");
+    private static final byte[] STRING_ENTITIES = NbtWriter.getAsciiStringBytes("entities");
+    private static final byte[] STRING_CARVING_MASKS = NbtWriter.getAsciiStringBytes("CarvingMasks");
+    private static final byte[] STRING_UPGRADE_DATA = NbtWriter.getAsciiStringBytes("UpgradeData");
+    private static final byte[] STRING_BLENDING_DATA = NbtWriter.getAsciiStringBytes("blending_data");
+    private static final byte[] STRING_BELOW_ZERO_RETROGEN = NbtWriter.getAsciiStringBytes("below_zero_retrogen");
+    private static final byte[] STRING_HEIGHTMAPS = NbtWriter.getAsciiStringBytes("Heightmaps");
+    private static final byte[] STRING_POST_PROCESSING = NbtWriter.getAsciiStringBytes("PostProcessing");
+    private static final byte[] STRING_BLOCK_TICKS = NbtWriter.getAsciiStringBytes("block_ticks");
+    private static final byte[] STRING_FLUID_TICKS = NbtWriter.getAsciiStringBytes("fluid_ticks");
+    private static final byte[] STRING_STRUCTURES = NbtWriter.getAsciiStringBytes("structures");
+    private static final byte[] STRING_STARTS = NbtWriter.getAsciiStringBytes("starts");
+    private static final byte[] STRING_BIG_REFERENCES = NbtWriter.getAsciiStringBytes("References");
+    private static final byte[] STRING_NAME = NbtWriter.getAsciiStringBytes("Name");
+    private static final byte[] STRING_PROPERTIES = NbtWriter.getAsciiStringBytes("Properties");
+    private static final byte[] STRING_C2ME = NbtWriter.getAsciiStringBytes("C2ME");
+
+    private static final byte[] STRING_CHAR_BIG_Y = NbtWriter.getAsciiStringBytes("Y");
+    private static final byte[] STRING_CHAR_SMALL_I = NbtWriter.getAsciiStringBytes("i");
+    private static final byte[] STRING_CHAR_SMALL_P = NbtWriter.getAsciiStringBytes("p");
+    private static final byte[] STRING_CHAR_SMALL_T = NbtWriter.getAsciiStringBytes("t");
+    private static final byte[] STRING_CHAR_SMALL_X = NbtWriter.getAsciiStringBytes("x");
+    private static final byte[] STRING_CHAR_SMALL_Y = NbtWriter.getAsciiStringBytes("y");
+    private static final byte[] STRING_CHAR_SMALL_Z = NbtWriter.getAsciiStringBytes("z");
+
+    // StarLight reads and writes light in its own format
+    private static final boolean STARLIGHT = FabricLoader.getInstance().isModLoaded("starlight");
+
+    private static final Heightmap.Type[] HEIGHTMAP_TYPES = Heightmap.Type.values();
+
+    // ChunkNibbleArray refuses anything else
+    private static final int NIBBLE_ARRAY_BYTES = 2048;
+
+    /**
+     * Mirror of {@link ChunkSerializer#deserialize(ServerWorld, PointOfInterestStorage, ChunkPos, NbtCompound)}
+     *
+     * @param mainThreadExecutor runs the point of interest updates of the loaded sections
+     * @return the chunk, or null if the payload has to be deserialized from an NBT tree instead
+     */
+    @Nullable
+    public static ProtoChunk read(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos chunkPos, byte[] data, Executor mainThreadExecutor) {
+        if (STARLIGHT) return null;
+        final Payload payload;
+        try {
+            payload = parse(world, data);
+        } catch (Throwable t) {
+            // also corrupt data: let vanilla report it the usual way
+            LOGGER.debug("Unable to read chunk {} in place, falling back to NBT", chunkPos, t);
+            return null;
+        }
+        if (payload == null || payload.dataVersion != SharedConstants.getGameVersion().getSaveVersion().getId() || payload.status == null) {
+            return null;
+        }
+        return build(world, poiStorage, chunkPos, payload, mainThreadExecutor);
+    }
+
+    //region parsing
+
+    @Nullable
+    private static Payload parse(ServerWorld world, byte[] data) throws IOException {
+        final NbtReader reader = new NbtReader(data);
+        if (reader.start() != NbtElement.COMPOUND_TYPE) return null;
+        final Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        final Payload payload = new Payload();
+        byte type;
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (reader.isName(STRING_SECTIONS)) {
+                if (type != NbtElement.LIST_TYPE || !readSections(reader, biomeRegistry, payload)) return null;
+            } else if (reader.isName(STRING_HEIGHTMAPS)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                readHeightmaps(reader, payload);
+            } else if (reader.isName(STRING_BLOCK_TICKS)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                payload.blockTicks = readTicks(reader, Registries.BLOCK);
+                if (payload.blockTicks == null) return null;
+            } else if (reader.isName(STRING_FLUID_TICKS)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                payload.fluidTicks = readTicks(reader, Registries.FLUID);
+                if (payload.fluidTicks == null) return null;
+            } else if (reader.isName(STRING_STRUCTURES)) {
+                if (type != NbtElement.COMPOUND_TYPE || !readStructures(reader, payload)) return null;
+            } else if (reader.isName(STRING_DATA_VERSION)) {
+                if (type != NbtElement.INT_TYPE) return null;
+                payload.dataVersion = reader.readInt();
+            } else if (reader.isName(STRING_X_POS)) {
+                if (type != NbtElement.INT_TYPE) return null;
+                payload.xPos = reader.readInt();
+            } else if (reader.isName(STRING_Z_POS)) {
+                if (type != NbtElement.INT_TYPE) return null;
+                payload.zPos = reader.readInt();
+            } else if (reader.isName(STRING_INHABITED_TIME)) {
+                if (type != NbtElement.LONG_TYPE) return null;
+                payload.inhabitedTime = reader.readLong();
+            } else if (reader.isName(STRING_STATUS)) {
+                if (type != NbtElement.STRING_TYPE) return null;
+                payload.status = reader.readString();
+            } else if (reader.isName(STRING_IS_LIGHT_ON)) {
+                if (type != NbtElement.BYTE_TYPE) return null;
+                payload.isLightOn = reader.readByte() != 0;
+            } else if (reader.isName(STRING_SHOULD_SAVE)) {
+                if (type != NbtElement.BYTE_TYPE) return null;
+                payload.shouldSave = reader.readByte() != 0;
+            } else if (reader.isName(STRING_BLOCK_ENTITIES)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                payload.blockEntities = (NbtList) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_ENTITIES)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                payload.entities = (NbtList) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_POST_PROCESSING)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                payload.postProcessing = (NbtList) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_CARVING_MASKS)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                payload.carvingMasks = (NbtCompound) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_UPGRADE_DATA)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                payload.upgradeData = (NbtCompound) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_BLENDING_DATA)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                payload.blendingData = (NbtCompound) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_BELOW_ZERO_RETROGEN)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                payload.belowZeroRetrogen = (NbtCompound) reader.readElement(type, 1);
+            } else if (reader.isName(STRING_Y_POS) || reader.isName(STRING_LAST_UPDATE) || reader.isName(STRING_C2ME)) {
+                // not read by vanilla either
+                reader.skip(type);
+            } else {
+                // entries of other mods
+                return null;
+            }
+        }
+        return payload;
+    }
+
+    private static boolean readSections(NbtReader reader, Registry<Biome> biomeRegistry, Payload payload) {
+        final byte elementType = reader.readListType();
+        final int count = reader.readInt();
+        if (count == 0) return true;
+        if (elementType != NbtElement.COMPOUND_TYPE) return false;
+        for (int i = 0; i < count; i++) {
+            final SectionData section = new SectionData();
+            byte type;
+            while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+                if (reader.isName(STRING_BLOCK_STATES)) {
+                    if (type != NbtElement.COMPOUND_TYPE) return false;
+                    section.blockStates = readBlockStates(reader);
+                    if (section.blockStates == null) return false;
+                } else if (reader.isName(STRING_BIOMES)) {
+                    if (type != NbtElement.COMPOUND_TYPE) return false;
+                    section.biomes = readBiomes(reader, biomeRegistry);
+                    if (section.biomes == null) return false;
+                } else if (reader.isName(STRING_BLOCK_LIGHT)) {
+                    if (type != NbtElement.BYTE_ARRAY_TYPE) return false;
+                    section.blockLight = reader.readByteArray();
+                    if (section.blockLight.length != NIBBLE_ARRAY_BYTES) return false;
+                } else if (reader.isName(STRING_SKY_LIGHT)) {
+                    if (type != NbtElement.BYTE_ARRAY_TYPE) return false;
+                    section.skyLight = reader.readByteArray();
+                    if (section.skyLight.length != NIBBLE_ARRAY_BYTES) return false;
+                } else if (reader.isName(STRING_CHAR_BIG_Y)) {
+                    if (type != NbtElement.BYTE_TYPE) return false;
+                    section.y = reader.readByte();
+                } else {
+                    return false;
+                }
+            }
+            payload.sections.add(section);
+        }
+        return true;
+    }
+
+    /**
+     * Mirror of the block state codec of {@link ChunkSerializer}
+     */
+    @Nullable
+    private static PalettedContainer<BlockState> readBlockStates(NbtReader reader) {
+        List<BlockState> palette = null;
+        long[] data = null;
+        byte type;
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (reader.isName(STRING_PALETTE)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                final byte elementType = reader.readListType();
+                final int count = reader.readInt();
+                if (count > 0 && elementType != NbtElement.COMPOUND_TYPE) return null;
+                palette = new ObjectArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final BlockState state = readBlockState(reader);
+                    if (state == null) return null;
+                    palette.add(state);
+                }
+            } else if (reader.isName(STRING_DATA)) {
+                if (type != NbtElement.LONG_ARRAY_TYPE) return null;
+                data = reader.readLongArray();
+            } else {
+                return null;
+            }
+        }
+        if (palette == null) return null;
+        return IPalettedContainer.invokeRead(Block.STATE_IDS, PalettedContainer.PaletteProvider.BLOCK_STATE, serialized(palette, data))
+                .result().orElse(null);
+    }
+
+    /**
+     * Mirror of {@link BlockState#CODEC}, except that unknown blocks and properties are not recovered from
+     */
+    @Nullable
+    private static BlockState readBlockState(NbtReader reader) {
+        BlockState state = null;
+        // names are in no particular order, so properties may come first
+        ObjectArrayList<String> properties = null;
+        byte type;
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (reader.isName(STRING_NAME)) {
+                if (type != NbtElement.STRING_TYPE) return null;
+                final Identifier id = Identifier.tryParse(reader.readString());
+                if (id == null) return null;
+                final Optional<Block> block = Registries.BLOCK.getOrEmpty(id);
+                if (block.isEmpty()) return null;
+                state = block.get().getDefaultState();
+            } else if (reader.isName(STRING_PROPERTIES)) {
+                if (type != NbtElement.COMPOUND_TYPE) return null;
+                properties = new ObjectArrayList<>();
+                byte propertyType;
+                while ((propertyType = reader.nextEntry()) != NbtElement.END_TYPE) {
+                    if (propertyType != NbtElement.STRING_TYPE) return null;
+                    properties.add(reader.getName());
+                    properties.add(reader.readString());
+                }
+            } else {
+                return null;
+            }
+        }
+        if (state == null) return null;
+        if (properties != null) {
+            for (int i = 0; i < properties.size(); i += 2) {
+                final Property<?> property = state.getBlock().getStateManager().getProperty(properties.get(i));
+                if (property == null) return null;
+                state = with(state, property, properties.get(i + 1));
+                if (state == null) return null;
+            }
+        }
+        return state;
+    }
+
+    @Nullable
+    private static <T extends Comparable<T>> BlockState with(BlockState state, Property<T> property, String value) {
+        final Optional<T> parsed = property.parse(value);
+        return parsed.isPresent() ? state.with(property, parsed.get()) : null;
+    }
+
+    /**
+     * Mirror of {@link ChunkSerializer#createCodec(Registry)}
+     */
+    @Nullable
+    private static ReadableContainer<RegistryEntry<Biome>> readBiomes(NbtReader reader, Registry<Biome> biomeRegistry) {
+        List<RegistryEntry<Biome>> palette = null;
+        long[] data = null;
+        byte type;
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (reader.isName(STRING_PALETTE)) {
+                if (type != NbtElement.LIST_TYPE) return null;
+                final byte elementType = reader.readListType();
+                final int count = reader.readInt();
+                if (count > 0 && elementType != NbtElement.STRING_TYPE) return null;
+                palette = new ObjectArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final Identifier id = Identifier.tryParse(reader.readString());
+                    if (id == null) return null;
+                    final Optional<? extends RegistryEntry<Biome>> biome = biomeRegistry.getEntry(RegistryKey.of(RegistryKeys.BIOME, id));
+                    if (biome.isEmpty()) return null;
+                    palette.add(biome.get());
+                }
+            } else if (reader.isName(STRING_DATA)) {
+                if (type != NbtElement.LONG_ARRAY_TYPE) return null;
+                data = reader.readLongArray();
+            } else {
+                return null;
+            }
+        }
+        if (palette == null) return null;
+        return IPalettedContainer.invokeRead(biomeRegistry.getIndexedEntries(), PalettedContainer.PaletteProvider.BIOME, serialized(palette, data))
+                .result().orElse(null);
+    }
+
+    private static <T> ReadableContainer.Serialized<T> serialized(List<T> palette, @Nullable long[] data) {
+        return new ReadableContainer.Serialized<>(palette, data != null ? Optional.of(LongStream.of(data)) : Optional.empty());
+    }
+
+    private static void readHeightmaps(NbtReader reader, Payload payload) {
+        byte type;
+        entries:
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (type == NbtElement.LONG_ARRAY_TYPE) {
+                for (Heightmap.Type heightmapType : HEIGHTMAP_TYPES) {
+                    if (reader.isName(((HeightMapTypeAccessor) (Object) heightmapType).getNameBytes())) {
+                        payload.heightmaps[heightmapType.ordinal()] = reader.readLongArray();
+                        continue entries;
+                    }
+                }
+            }
+            // ignored by vanilla as well
+            reader.skip(type);
+        }
+    }
+
+    /**
+     * Mirror of {@link Tick#fromNbt(NbtCompound, Function)}
+     */
+    @Nullable
+    private static <T> List<Tick<T>> readTicks(NbtReader reader, Registry<T> registry) {
+        final byte elementType = reader.readListType();
+        final int count = reader.readInt();
+        if (count == 0) return new ObjectArrayList<>();
+        if (elementType != NbtElement.COMPOUND_TYPE) return null;
+        final ObjectArrayList<Tick<T>> ticks = new ObjectArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = "";
+            int x = 0, y = 0, z = 0, delay = 0, priority = 0;
+            byte type;
+            while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+                if (reader.isName(STRING_CHAR_SMALL_I)) {
+                    if (type != NbtElement.STRING_TYPE) return null;
+                    id = reader.readString();
+                } else if (type != NbtElement.INT_TYPE) {
+                    return null;
+                } else if (reader.isName(STRING_CHAR_SMALL_X)) {
+                    x = reader.readInt();
+                } else if (reader.isName(STRING_CHAR_SMALL_Y)) {
+                    y = reader.readInt();
+                } else if (reader.isName(STRING_CHAR_SMALL_Z)) {
+                    z = reader.readInt();
+                } else if (reader.isName(STRING_CHAR_SMALL_T)) {
+                    delay = reader.readInt();
+                } else if (reader.isName(STRING_CHAR_SMALL_P)) {
+                    priority = reader.readInt();
+                } else {
+                    return null;
+                }
+            }
+            final Optional<T> tickType = registry.getOrEmpty(Identifier.tryParse(id));
+            if (tickType.isPresent()) {
+                ticks.add(new Tick<>(tickType.get(), new BlockPos(x, y, z), delay, TickPriority.byIndex(priority)));
+            }
+        }
+        return ticks;
+    }
+
+    private static boolean readStructures(NbtReader reader, Payload payload) throws IOException {
+        byte type;
+        while ((type = reader.nextEntry()) != NbtElement.END_TYPE) {
+            if (reader.isName(STRING_STARTS)) {
+                if (type != NbtElement.COMPOUND_TYPE) return false;
+                payload.structureStarts = (NbtCompound) reader.readElement(type, 2);
+            } else if (reader.isName(STRING_BIG_REFERENCES)) {
+                if (type != NbtElement.COMPOUND_TYPE) return false;
+                byte referenceType;
+                while ((referenceType = reader.nextEntry()) != NbtElement.END_TYPE) {
+                    if (referenceType != NbtElement.LONG_ARRAY_TYPE) return false;
+                    payload.structureReferences.put(reader.getName(), reader.readLongArray());
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //endregion
+
+    //region building
+
+    private static ProtoChunk build(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos chunkPos, Payload payload, Executor mainThreadExecutor) {
+        Chunk chunk;
+        ChunkPos chunkPos2 = new ChunkPos(payload.xPos, payload.zPos);
+        if (!chunkPos2.equals(chunkPos)) {
+            LOGGER.error("Chunk file at {} is in the wrong location; relocating. (Expected {}, got {})", chunkPos, chunkPos, chunkPos2);
+        }
+
+        int i = world.countVerticalSections();
+        ChunkSection[] chunkSections = new ChunkSection[i];
+        boolean hasSkyLight = world.getDimension().hasSkyLight();
+        LightingProvider lightingProvider = world.getChunkManager().getLightingProvider();
+        Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        boolean retainingLight = false;
+
+        for (SectionData section : payload.sections) {
+            int y = section.y;
+            int index = world.sectionCoordToIndex(y);
+            if (index >= 0 && index < chunkSections.length) {
+                PalettedContainer<BlockState> blockStates = section.blockStates != null
+                        ? section.blockStates
+                        : new PalettedContainer<>(Block.STATE_IDS, Blocks.AIR.getDefaultState(), PalettedContainer.PaletteProvider.BLOCK_STATE);
+                ReadableContainer<RegistryEntry<Biome>> biomes = section.biomes != null
+                        ? section.biomes
+                        : new PalettedContainer<>(biomeRegistry.getIndexedEntries(), biomeRegistry.entryOf(BiomeKeys.PLAINS), PalettedContainer.PaletteProvider.BIOME);
+                ChunkSection chunkSection = new ChunkSection(blockStates, biomes);
+                ChunkSectionPos chunkSectionPos = ChunkSectionPos.from(chunkPos, y);
+                chunkSections[index] = chunkSection;
+                mainThreadExecutor.execute(() -> poiStorage.initForPalette(chunkSectionPos, chunkSection));
+            }
+
+            boolean hasBlockLight = section.blockLight != null;
+            boolean loadSkyLight = hasSkyLight && section.skyLight != null;
+            if (hasBlockLight || loadSkyLight) {
+                if (!retainingLight) {
+                    lightingProvider.setRetainData(chunkPos, true);
+                    retainingLight = true;
+                }
+                if (hasBlockLight) {
+                    lightingProvider.enqueueSectionData(LightType.BLOCK, ChunkSectionPos.from(chunkPos, y), new ChunkNibbleArray(section.blockLight));
+                }
+                if (loadSkyLight) {
+                    lightingProvider.enqueueSectionData(LightType.SKY, ChunkSectionPos.from(chunkPos, y), new ChunkNibbleArray(section.skyLight));
+                }
+            }
+        }
+
+        UpgradeData upgradeData = payload.upgradeData != null ? new UpgradeData(payload.upgradeData, world) : UpgradeData.NO_UPGRADE_DATA;
+        BlendingData blendingData = null;
+        if (payload.blendingData != null) {
+            blendingData = BlendingData.CODEC.parse(new Dynamic<>(NbtOps.INSTANCE, payload.blendingData)).resultOrPartial(LOGGER::error).orElse(null);
+        }
+
+        ChunkStatus status = ChunkStatus.byId(payload.status);
+        if (status.getChunkType() == ChunkStatus.ChunkType.LEVELCHUNK) {
+            ChunkTickScheduler<Block> blockTicks = IChunkTickScheduler.create(inChunk(payload.blockTicks, chunkPos));
+            ChunkTickScheduler<Fluid> fluidTicks = IChunkTickScheduler.create(inChunk(payload.fluidTicks, chunkPos));
+            chunk = new WorldChunk(world, chunkPos, upgradeData, blockTicks, fluidTicks, payload.inhabitedTime, chunkSections, getEntityLoadingCallback(world, payload), blendingData);
+        } else {
+            SimpleTickScheduler<Block> blockTicks = new SimpleTickScheduler<>();
+            ((ISimpleTickScheduler<Block>) blockTicks).getScheduledTicks().addAll(inChunk(payload.blockTicks, chunkPos));
+            SimpleTickScheduler<Fluid> fluidTicks = new SimpleTickScheduler<>();
+            ((ISimpleTickScheduler<Fluid>) fluidTicks).getScheduledTicks().addAll(inChunk(payload.fluidTicks, chunkPos));
+            ProtoChunk protoChunk = new ProtoChunk(chunkPos, upgradeData, chunkSections, blockTicks, fluidTicks, world, biomeRegistry, blendingData);
+            chunk = protoChunk;
+            protoChunk.setInhabitedTime(payload.inhabitedTime);
+            protoChunk.setStatus(status);
+            if (payload.belowZeroRetrogen != null) {
+                BelowZeroRetrogen.CODEC.parse(new Dynamic<>(NbtOps.INSTANCE, payload.belowZeroRetrogen)).resultOrPartial(LOGGER::error).ifPresent(protoChunk::setBelowZeroRetrogen);
+            }
+            if (status.isAtLeast(ChunkStatus.INITIALIZE_LIGHT)) {
+                protoChunk.refreshSurfaceY();
+            }
+        }
+        chunk.setLightOn(payload.isLightOn);
+
+        EnumSet<Heightmap.Type> missingHeightmaps = EnumSet.noneOf(Heightmap.Type.class);
+        for (Heightmap.Type type : chunk.getStatus().getHeightmapTypes()) {
+            final long[] heightmap = payload.heightmaps[type.ordinal()];
+            if (heightmap != null) {
+                chunk.setHeightmap(type, heightmap);
+            } else {
+                missingHeightmaps.add(type);
+            }
+        }
+        Heightmap.populateHeightmaps(chunk, missingHeightmaps);
+
+        final NbtCompound structures = new NbtCompound();
+        if (payload.structureStarts != null) structures.put("starts", payload.structureStarts);
+        chunk.setStructureStarts(IChunkSerializer.invokeReadStructureStarts(StructureContext.from(world), structures, world.getSeed()));
+        chunk.setStructureReferences(readStructureReferences(world, chunkPos, payload.structureReferences));
+
+        if (payload.shouldSave) {
+            chunk.setNeedsSaving(true);
+        }
+
+        if (payload.postProcessing != null && payload.postProcessing.getHeldType() == NbtElement.LIST_TYPE) {
+            for (int n = 0; n < payload.postProcessing.size(); ++n) {
+                NbtList positions = payload.postProcessing.getList(n);
+                for (int o = 0; o < positions.size(); ++o) {
+                    chunk.markBlockForPostProcessing(positions.getShort(o), n);
+                }
+            }
+        }
+
+        if (chunk instanceof WorldChunk worldChunk) {
+            return new ReadOnlyChunk(worldChunk, false);
+        }
+
+        ProtoChunk protoChunk = (ProtoChunk) chunk;
+        if (payload.entities != null && payload.entities.getHeldType() == NbtElement.COMPOUND_TYPE) {
+            for (int o = 0; o < payload.entities.size(); ++o) {
+                protoChunk.addEntity(payload.entities.getCompound(o));
+            }
+        }
+        if (payload.blockEntities != null && payload.blockEntities.getHeldType() == NbtElement.COMPOUND_TYPE) {
+            for (int p = 0; p < payload.blockEntities.size(); ++p) {
+                chunk.addPendingBlockEntityNbt(payload.blockEntities.getCompound(p));
+            }
+        }
+        if (payload.carvingMasks != null) {
+            for (String carver : payload.carvingMasks.getKeys()) {
+                protoChunk.setCarvingMask(GenerationStep.Carver.valueOf(carver), new CarvingMask(payload.carvingMasks.getLongArray(carver), chunk.getBottomY()));
+            }
+        }
+        return protoChunk;
+    }
+
+    /**
+     * Mirror of {@link Tick#tick(NbtList, Function, ChunkPos, java.util.function.Consumer)}
+     */
+    private static <T> List<Tick<T>> inChunk(List<Tick<T>> ticks, ChunkPos chunkPos) {
+        final long pos = chunkPos.toLong();
+        ticks.removeIf(tick -> ChunkPos.toLong(tick.pos()) != pos);
+        return ticks;
+    }
+
+    @Nullable
+    private static WorldChunk.EntityLoader getEntityLoadingCallback(ServerWorld world, Payload payload) {
+        final NbtCompound nbt = new NbtCompound();
+        if (payload.entities != null) nbt.put("entities", payload.entities);
+        if (payload.blockEntities != null) nbt.put("block_entities", payload.blockEntities);
+        return IChunkSerializer.invokeGetEntityLoadingCallback(world, nbt);
+    }
+
+    /**
+     * Mirror of {@link ChunkSerializer#readStructureReferences}
+     */
+    private static Map<Structure, LongSet> readStructureReferences(ServerWorld world, ChunkPos pos, Map<String, long[]> references) {
+        Map<Structure, LongSet> map = new HashMap<>();
+        Registry<Structure> registry = world.getRegistryManager().get(RegistryKeys.STRUCTURE);
+        for (Map.Entry<String, long[]> entry : references.entrySet()) {
+            Identifier identifier = Identifier.tryParse(entry.getKey());
+            Structure structure = registry.get(identifier);
+            if (structure == null) {
+                LOGGER.warn("Found reference to unknown structure '{}' in chunk {}, discarding", identifier, pos);
+                continue;
+            }
+            long[] ls = entry.getValue();
+            if (ls.length == 0) continue;
+            map.put(structure, new LongOpenHashSet(Arrays.stream(ls).filter(packedPos -> {
+                ChunkPos chunkPos = new ChunkPos(packedPos);
+                if (chunkPos.getChebyshevDistance(pos) > 8) {
+                    LOGGER.warn("Found invalid structure reference [ {} @ {} ] for chunk {}.", identifier, chunkPos, pos);
+                    return false;
+                }
+                return true;
+            }).toArray()));
+        }
+        return map;
+    }
+
+    //endregion
+
+    private static class Payload {
+        private int dataVersion = -1;
+        private int xPos;
+        private int zPos;
+        private long inhabitedTime;
+        @Nullable
+        private String status;
+        private boolean isLightOn;
+        private boolean shouldSave;
+        private final ObjectArrayList<SectionData> sections = new ObjectArrayList<>();
+        private final long[][] heightmaps = new long[HEIGHTMAP_TYPES.length][];
+        private List<Tick<Block>> blockTicks = new ObjectArrayList<>();
+        private List<Tick<Fluid>> fluidTicks = new ObjectArrayList<>();
+        @Nullable
+        private NbtCompound structureStarts;
+        private final Map<String, long[]> structureReferences = new HashMap<>();
+        @Nullable
+        private NbtList entities;
+        @Nullable
+        private NbtList blockEntities;
+        @Nullable
+        private NbtList postProcessing;
+        @Nullable
+        private NbtCompound carvingMasks;
+        @Nullable
+        private NbtCompound upgradeData;
+        @Nullable
+        private NbtCompound blendingData;
+        @Nullable
+        private NbtCompound belowZeroRetrogen;
+    }
+
+    private static class SectionData {
+        private int y;
+        @Nullable
+        private PalettedContainer<BlockState> blockStates;
+        @Nullable
+        private ReadableContainer<RegistryEntry<Biome>> biomes;
+        @Nullable
+        private byte[] blockLight;
+        @Nullable
+        private byte[] skyLight;
+    }
+
+}
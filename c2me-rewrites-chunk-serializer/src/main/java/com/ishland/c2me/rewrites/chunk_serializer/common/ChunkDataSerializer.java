@@ -8,6 +8,9 @@ import com.ishland.c2me.base.mixin.access.ISimpleTickScheduler;
 import com.ishland.c2me.base.mixin.access.IState;
 import com.ishland.c2me.base.mixin.access.IStructurePiece;
 import com.ishland.c2me.base.mixin.access.IStructureStart;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IBelowZeroRetrogen;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IBlendingData;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IUpgradeData;
 import com.mojang.serialization.Codec;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.shorts.ShortList;
@@ -35,6 +38,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.EightWayDirection;
 import net.minecraft.world.ChunkSerializer;
 import net.minecraft.world.Heightmap;
 import net.minecraft.world.LightType;
@@ -47,9 +51,12 @@ import net.minecraft.world.chunk.ChunkStatus;
 import net.minecraft.world.chunk.PalettedContainer;
 import net.minecraft.world.chunk.ProtoChunk;
 import net.minecraft.world.chunk.ReadableContainer;
+import net.minecraft.world.chunk.UpgradeData;
 import net.minecraft.world.chunk.light.LightingProvider;
 import net.minecraft.world.gen.GenerationStep;
 import net.minecraft.world.gen.carver.CarvingMask;
+import net.minecraft.world.gen.chunk.BelowZeroRetrogen;
+import net.minecraft.world.gen.chunk.BlendingData;
 import net.minecraft.world.gen.structure.Structure;
 import net.minecraft.world.tick.ChunkTickScheduler;
 import net.minecraft.world.tick.OrderedTick;
@@ -118,6 +125,19 @@ public final class ChunkDataSerializer {
     private static final byte[] STRING_CHAR_SMALL_Y = NbtWriter.getAsciiStringBytes("y");
     private static final byte[] STRING_CHAR_SMALL_Z = NbtWriter.getAsciiStringBytes("z");
 
+    private static final byte[] STRING_BLENDING_DATA = NbtWriter.getAsciiStringBytes("blending_data");
+    private static final byte[] STRING_MIN_SECTION = NbtWriter.getAsciiStringBytes("min_section");
+    private static final byte[] STRING_MAX_SECTION = NbtWriter.getAsciiStringBytes("max_section");
+    private static final byte[] STRING_HEIGHTS = NbtWriter.getAsciiStringBytes("heights");
+    private static final byte[] STRING_BELOW_ZERO_RETROGEN = NbtWriter.getAsciiStringBytes("below_zero_retrogen");
+    private static final byte[] STRING_TARGET_STATUS = NbtWriter.getAsciiStringBytes("target_status");
+    private static final byte[] STRING_MISSING_BEDROCK = NbtWriter.getAsciiStringBytes("missing_bedrock");
+    private static final byte[] STRING_UPGRADE_DATA = NbtWriter.getAsciiStringBytes("UpgradeData");
+    private static final byte[] STRING_INDICES = NbtWriter.getAsciiStringBytes("Indices");
+    private static final byte[] STRING_SIDES = NbtWriter.getAsciiStringBytes("Sides");
+    private static final byte[] STRING_NEIGHBOR_BLOCK_TICKS = NbtWriter.getAsciiStringBytes("neighbor_block_ticks");
+    private static final byte[] STRING_NEIGHBOR_FLUID_TICKS = NbtWriter.getAsciiStringBytes("neighbor_fluid_ticks");
+
     private static final byte[] STRING_C2ME = NbtWriter.getAsciiStringBytes("C2ME");
     private static final byte[] STRING_KROPPEB = NbtWriter.getAsciiStringBytes("Kroppeb was here :); Version: 0.3.0");
 
@@ -139,6 +159,10 @@ public final class ChunkDataSerializer {
     // TODO: validating starlight compatibility?
     private static final boolean STARLIGHT = FabricLoader.getInstance().isModLoaded("starlight");
 
+    private static final EncodingCache<ChunkSection> SECTION_ENCODINGS = new EncodingCache<>(Config.sectionEncodingCacheBytes);
+    // starts are few and small next to sections
+    private static final EncodingCache<StructureStart> STRUCTURE_PIECE_ENCODINGS = new EncodingCache<>(Config.sectionEncodingCacheBytes / 4);
+
     /**
      * Mirror of {@link ChunkSerializer#serialize(ServerWorld, Chunk)}
      */
@@ -156,17 +180,20 @@ public final class ChunkDataSerializer {
         writer.putLong(STRING_INHABITED_TIME, chunk.getInhabitedTime());
         writer.putString(STRING_STATUS, ((ChunkStatusAccessor) chunk.getStatus()).getIdBytes());
 
-        // Legacy world-upgrade fields (blending_data, below_zero_retrogen,
-        // upgrade_data) are not supported by this serializer: the fork targets
-        // freshly created 1.20.1 worlds where none of them ever exist. Refuse
-        // loudly rather than silently stripping them - dropping
-        // below_zero_retrogen would permanently damage 1.17-upgraded terrain.
-        // The throw routes into the existing failed-save handling, preserving
-        // the on-disk copy.
-        if (chunk.getBlendingData() != null || chunk.getBelowZeroRetrogen() != null || !chunk.getUpgradeData().isDone()) {
-            throw new UnsupportedOperationException(
-                    "Chunk " + chunk.getPos() + " carries pre-1.20.1 upgrade data (world upgraded from an older version). "
-                            + "The gc-free chunk serializer does not support legacy worlds; disable ioSystem.gcFreeChunkSerializer in c2me.toml.");
+        // state of chunks of worlds upgraded from older versions
+        BlendingData blendingData = chunk.getBlendingData();
+        if (blendingData != null) {
+            writeBlendingData(writer, (IBlendingData) blendingData);
+        }
+
+        BelowZeroRetrogen belowZeroRetrogen = chunk.getBelowZeroRetrogen();
+        if (belowZeroRetrogen != null) {
+            writeBelowZeroRetrogen(writer, belowZeroRetrogen);
+        }
+
+        UpgradeData upgradeData = chunk.getUpgradeData();
+        if (!upgradeData.isDone()) {
+            writeUpgradeData(writer, (IUpgradeData) upgradeData);
         }
 
         ChunkSection[] chunkSections = chunk.getSectionArray();
@@ -238,6 +265,83 @@ public final class ChunkDataSerializer {
         writeStructures(writer, StructureContext.from(world), chunkPos, chunk.getStructureStarts(), chunk.getStructureReferences());
     }
 
+    /**
+     * mirror of {@link BlendingData#CODEC}
+     */
+    private static void writeBlendingData(NbtWriter writer, IBlendingData blendingData) {
+        writer.startCompound(STRING_BLENDING_DATA);
+        writer.putInt(STRING_MIN_SECTION, blendingData.getOldHeightLimit().getBottomSectionCoord());
+        writer.putInt(STRING_MAX_SECTION, blendingData.getOldHeightLimit().getTopSectionCoord());
+        final double[] surfaceHeights = blendingData.getSurfaceHeights();
+        for (double surfaceHeight : surfaceHeights) {
+            // Double.MAX_VALUE marks unknown heights, and all of them unknown is left out
+            if (surfaceHeight != Double.MAX_VALUE) {
+                writer.putDoubles(STRING_HEIGHTS, surfaceHeights);
+                break;
+            }
+        }
+        writer.finishCompound();
+    }
+
+    /**
+     * mirror of {@link BelowZeroRetrogen#CODEC}
+     */
+    private static void writeBelowZeroRetrogen(NbtWriter writer, BelowZeroRetrogen belowZeroRetrogen) {
+        writer.startCompound(STRING_BELOW_ZERO_RETROGEN);
+        writer.putString(STRING_TARGET_STATUS, ((ChunkStatusAccessor) belowZeroRetrogen.getTargetStatus()).getIdBytes());
+        final BitSet missingBedrock = ((IBelowZeroRetrogen) belowZeroRetrogen).getMissingBedrock();
+        if (!missingBedrock.isEmpty()) {
+            writer.putLongArray(STRING_MISSING_BEDROCK, missingBedrock.toLongArray());
+        }
+        writer.finishCompound();
+    }
+
+    /**
+     * mirror of {@link UpgradeData#toNbt()}
+     */
+    private static void writeUpgradeData(NbtWriter writer, IUpgradeData upgradeData) {
+        writer.startCompound(STRING_UPGRADE_DATA);
+
+        final int[][] centerIndicesToUpgrade = upgradeData.getCenterIndicesToUpgrade();
+        boolean hasIndices = false;
+        for (int i = 0; i < centerIndicesToUpgrade.length; ++i) {
+            final int[] indices = centerIndicesToUpgrade[i];
+            if (indices != null && indices.length != 0) {
+                if (!hasIndices) {
+                    writer.startCompound(STRING_INDICES);
+                    hasIndices = true;
+                }
+                writer.putIntArray(i < STRING_NUMERIC_INDICES.length ? STRING_NUMERIC_INDICES[i] : NbtWriter.getAsciiStringBytes(String.valueOf(i)), indices);
+            }
+        }
+        if (hasIndices) {
+            writer.finishCompound();
+        }
+
+        int sides = 0;
+        for (EightWayDirection direction : upgradeData.getSidesToUpgrade()) {
+            sides |= 1 << direction.ordinal();
+        }
+        writer.putByte(STRING_SIDES, (byte) sides);
+
+        writeUpgradeTicks(writer, upgradeData.getBlockTicks(), Registries.BLOCK, STRING_NEIGHBOR_BLOCK_TICKS);
+        writeUpgradeTicks(writer, upgradeData.getFluidTicks(), Registries.FLUID, STRING_NEIGHBOR_FLUID_TICKS);
+
+        writer.finishCompound();
+    }
+
+    private static <T> void writeUpgradeTicks(NbtWriter writer, List<Tick<T>> ticks, Registry<T> registry, byte[] name) {
+        if (ticks.isEmpty()) return;
+        // counted as written, like the tick schedulers: upgrading can run concurrently
+        long list = writer.startList(name, NbtElement.COMPOUND_TYPE);
+        int size = 0;
+        for (Tick<T> tick : ticks) {
+            writeTick(writer, tick, registry);
+            size++;
+        }
+        writer.finishList(list, size);
+    }
+
     private static void checkLightFlag(Chunk chunk, NbtWriter writer, ServerWorld world) {
         if (STARLIGHT) {
             // starlight also has a check to see if the "level" isn't a "serverlevel"???
@@ -310,10 +414,7 @@ public final class ChunkDataSerializer {
                 if (bl2) {
                     hasInner = true;
                     writer.compoundEntryStart();
-                    IChunkSection chunkSection = chunkSections[index];
-
-                    writeBlockStates(writer, chunkSection.getBlockStateContainer());
-                    writeBiomes(writer, chunkSection.getBiomeContainer(), biomeRegistry);
+                    writeSectionContents(writer, chunkSections[index], biomeRegistry);
                 }
 
                 if (blockLight != null && !blockLight.isUninitialized()) {
@@ -387,10 +488,7 @@ public final class ChunkDataSerializer {
                 if (bl2) {
                     hasInner = true;
                     writer.compoundEntryStart();
-                    IChunkSection chunkSection = chunkSections[index];
-
-                    writeBlockStates(writer, chunkSection.getBlockStateContainer());
-                    writeBiomes(writer, chunkSection.getBiomeContainer(), biomeRegistry);
+                    writeSectionContents(writer, chunkSections[index], biomeRegistry);
                 }
 
                 // START DIFF
@@ -453,6 +551,28 @@ public final class ChunkDataSerializer {
         }
     }
 
+    /**
+     * Block states and biomes of a section, reusing the encoding of its last save if it did not change since
+     */
+    private static void writeSectionContents(NbtWriter writer, IChunkSection chunkSection, Registry<Biome> biomeRegistry) {
+        if (!SECTION_ENCODINGS.isEnabled()) {
+            writeBlockStates(writer, chunkSection.getBlockStateContainer());
+            writeBiomes(writer, chunkSection.getBiomeContainer(), biomeRegistry);
+            return;
+        }
+        final ChunkSection section = (ChunkSection) (Object) chunkSection;
+        final int modificationCount = ((ChunkSectionAccessor) section).getModificationCount();
+        final byte[] encoded = SECTION_ENCODINGS.get(section, modificationCount);
+        if (encoded != null) {
+            writer.putRaw(encoded);
+            return;
+        }
+        final long start = writer.getOffset();
+        writeBlockStates(writer, chunkSection.getBlockStateContainer());
+        writeBiomes(writer, chunkSection.getBiomeContainer(), biomeRegistry);
+        SECTION_ENCODINGS.put(section, modificationCount, writer, start);
+    }
+
     /**
      * mirror of {@link ChunkSerializer#CODEC}
      * created by {@link PalettedContainer#createPalettedContainerCodec(IndexedIterable, Codec, PalettedContainer.PaletteProvider, Object)}
@@ -687,11 +807,23 @@ public final class ChunkDataSerializer {
         writer.putInt(STRING_SMALL_REFERENCES, structureStart.getReferences());
 
         // section: StructurePiecesList#toNbt(StructureContext)
+        // the pieces don't change once placed, so their encoding is reused across saves
+        final StructureStart start = (StructureStart) (Object) structureStart;
+        final int modificationCount = ((StructureStartAccessor) start).getModificationCount();
+        final byte[] encoded = STRUCTURE_PIECE_ENCODINGS.isEnabled() ? STRUCTURE_PIECE_ENCODINGS.get(start, modificationCount) : null;
+        if (encoded != null) {
+            writer.putRaw(encoded);
+            return;
+        }
+        final long piecesStart = writer.getOffset();
         writer.startFixedList(STRING_CHILDREN, children.pieces().size(), NbtElement.COMPOUND_TYPE);
         for (StructurePiece piece : children.pieces()) {
             writer.putElementEntry(piece.toNbt(context));
             // TODO: writeStructurePiece(writer,(StructurePieceAccessor) piece, context);
         }
+        if (STRUCTURE_PIECE_ENCODINGS.isEnabled()) {
+            STRUCTURE_PIECE_ENCODINGS.put(start, modificationCount, writer, piecesStart);
+        }
     }
 
     @SuppressWarnings("unused")
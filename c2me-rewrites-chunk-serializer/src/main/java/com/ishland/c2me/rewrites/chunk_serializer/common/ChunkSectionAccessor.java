@@ -0,0 +1,8 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+public interface ChunkSectionAccessor {
+    /**
+     * @return a counter bumped by every change to the block states or biomes of the section
+     */
+    int getModificationCount();
+}
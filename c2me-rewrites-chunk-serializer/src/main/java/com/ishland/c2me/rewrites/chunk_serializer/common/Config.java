@@ -0,0 +1,36 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+import com.ishland.c2me.base.common.config.ConfigSystem;
+
+public class Config {
+
+    public static final boolean gcFreeChunkDeserializer = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.gcFreeChunkDeserializer")
+            .comment("""
+                    Whether to load chunks straight from their stored bytes instead of building \s
+                    NBT trees first, when the reduced allocation chunk serializer is enabled \s
+                    Chunks that need vanilla handling, e.g. of older versions, are still loaded the vanilla way
+                    """)
+            .getBoolean(true, false);
+
+    public static final long nbtWriterBufferPoolBytes = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.nbtWriterBufferPoolMB")
+            .comment("""
+                    Maximum off-heap memory, in MiB, kept for reuse by the reduced allocation chunk serializer \s
+                    Each saving thread keeps its largest recent buffers, so that large chunks \s
+                    don't have to grow their buffer from scratch on every save \s
+                    Buffers of threads that have not saved for a minute are freed
+                    """)
+            .getLong(64, 64, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY) * 1024 * 1024;
+
+    public static final long sectionEncodingCacheBytes = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.sectionEncodingCacheMB")
+            .comment("""
+                    Maximum memory, in MiB, used to remember the encoded block states and biomes of \s
+                    saved chunk sections, so that sections unchanged since their last save are not encoded again \s
+                    Encoded structure pieces get another quarter of this on top \s
+                    0 to disable
+                    """)
+            .getLong(32, 32) * 1024 * 1024;
+
+}
@@ -0,0 +1,54 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodings of parts of a chunk as of their last save, keyed on the object they were encoded
+ * from and its modification count. An object whose count has not moved since is spliced into
+ * the next save verbatim instead of being encoded again.
+ * <p>
+ * Weakly keyed, so entries go away with their chunks, and bounded in size.
+ */
+final class EncodingCache<K> {
+
+    @Nullable
+    private final Cache<K, Entry> cache;
+
+    EncodingCache(long maxBytes) {
+        this.cache = maxBytes > 0
+                ? CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .maximumWeight(maxBytes)
+                        .weigher((K key, Entry entry) -> entry.bytes.length)
+                        .build()
+                : null;
+    }
+
+    boolean isEnabled() {
+        return this.cache != null;
+    }
+
+    /**
+     * @return the encoding of the object if it is still current, null otherwise
+     */
+    @Nullable
+    byte[] get(K key, int modificationCount) {
+        final Entry entry = this.cache.getIfPresent(key);
+        return entry != null && entry.modificationCount == modificationCount ? entry.bytes : null;
+    }
+
+    /**
+     * Remember what the writer wrote for the object since {@code start}.
+     *
+     * @param modificationCount the count read before encoding, so that changes made meanwhile miss
+     */
+    void put(K key, int modificationCount, NbtWriter writer, long start) {
+        this.cache.put(key, new Entry(modificationCount, writer.copyOf(start, writer.getOffset())));
+    }
+
+    private record Entry(int modificationCount, byte[] bytes) {
+    }
+
+}
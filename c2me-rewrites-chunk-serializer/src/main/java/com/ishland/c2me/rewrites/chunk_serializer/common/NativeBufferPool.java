@@ -0,0 +1,190 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+import com.ishland.c2me.rewrites.chunk_serializer.common.utils.UnsafeUtils;
+import sun.misc.Unsafe;
+
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread pool of the off-heap buffers of {@link NbtWriter}.
+ * <p>
+ * Buffers come in power-of-two size classes and each thread keeps its largest recently used
+ * buffers, so a writer starts out at the size the thread needed before and rarely has to grow.
+ * The total size of pooled buffers is capped, and buffers of threads that stopped saving
+ * chunks, or died, are freed again by a trim that runs in the background for as long as
+ * anything is pooled, so an idle server hands the memory back too.
+ * <p>
+ * Buffers are direct {@link ByteBuffer}s so that their contents can be handed to NIO and
+ * {@link java.util.zip.Deflater} without copying, while writers address them through Unsafe.
+ */
+final class NativeBufferPool {
+
+    private static final Unsafe UNSAFE = UnsafeUtils.UNSAFE;
+
+    static final long MIN_CAPACITY = 64 * 1024;
+    // larger buffers are rare enough to be freed right away
+    private static final long MAX_POOLED_CAPACITY = 32 * 1024 * 1024;
+    private static final long ADDRESS_OFFSET;
+    private static final int BUFFERS_PER_THREAD = 2;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long TRIM_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final AtomicLong pooledBytes = new AtomicLong();
+    private static final AtomicBoolean trimScheduled = new AtomicBoolean();
+    private static final ConcurrentLinkedQueue<ThreadPool> pools = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ThreadPool> threadPool = ThreadLocal.withInitial(() -> {
+        final ThreadPool pool = new ThreadPool(Thread.currentThread());
+        pools.add(pool);
+        return pool;
+    });
+
+    static {
+        try {
+            ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private NativeBufferPool() {
+    }
+
+    /**
+     * @return a buffer of at least {@code minCapacity} bytes
+     */
+    static ByteBuffer acquire(long minCapacity) {
+        final ByteBuffer buffer = threadPool.get().take(minCapacity);
+        if (buffer != null) return buffer;
+        return ByteBuffer.allocateDirect(capacityClass(minCapacity));
+    }
+
+    static long address(ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (buffer.capacity() > MAX_POOLED_CAPACITY || !threadPool.get().offer(buffer)) {
+            free(buffer);
+        } else {
+            scheduleTrim();
+        }
+    }
+
+    /**
+     * Trim every {@link #TRIM_INTERVAL_NANOS} while anything is pooled. Not on release, as
+     * threads that stopped saving chunks no longer release anything.
+     */
+    private static void scheduleTrim() {
+        if (!trimScheduled.compareAndSet(false, true)) return;
+        CompletableFuture.delayedExecutor(TRIM_INTERVAL_NANOS, TimeUnit.NANOSECONDS).execute(() -> {
+            trimScheduled.set(false);
+            trim(System.nanoTime());
+            if (pooledBytes.get() > 0) scheduleTrim();
+        });
+    }
+
+    private static int capacityClass(long minCapacity) {
+        if (minCapacity <= MIN_CAPACITY) return (int) MIN_CAPACITY;
+        final long capacity = Long.highestOneBit(minCapacity - 1) << 1;
+        // the largest power of two a ByteBuffer can hold
+        if (capacity > 1 << 30) {
+            if (minCapacity > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("NBT output exceeds 2GiB");
+            return Integer.MAX_VALUE - 8;
+        }
+        return (int) capacity;
+    }
+
+    private static void free(ByteBuffer buffer) {
+        // don't wait for the GC to notice
+        UNSAFE.invokeCleaner(buffer);
+    }
+
+    private static void trim(long now) {
+        for (Iterator<ThreadPool> iterator = pools.iterator(); iterator.hasNext(); ) {
+            final ThreadPool pool = iterator.next();
+            final Thread owner = pool.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                iterator.remove();
+                pool.clear();
+            } else if (now - pool.lastUse > IDLE_NANOS) {
+                pool.clear();
+            }
+        }
+    }
+
+    private static class ThreadPool {
+        private final WeakReference<Thread> owner;
+        // only touched by other threads when trimming
+        private final ByteBuffer[] buffers = new ByteBuffer[BUFFERS_PER_THREAD];
+        private volatile long lastUse = System.nanoTime();
+
+        private ThreadPool(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        /**
+         * @return the largest pooled buffer if it is large enough, null otherwise
+         */
+        private synchronized ByteBuffer take(long minCapacity) {
+            this.lastUse = System.nanoTime();
+            int largest = -1;
+            for (int i = 0; i < BUFFERS_PER_THREAD; i++) {
+                if (this.buffers[i] != null && (largest < 0 || this.buffers[i].capacity() > this.buffers[largest].capacity())) {
+                    largest = i;
+                }
+            }
+            if (largest < 0 || this.buffers[largest].capacity() < minCapacity) return null;
+            final ByteBuffer buffer = this.buffers[largest];
+            pooledBytes.addAndGet(-buffer.capacity());
+            this.buffers[largest] = null;
+            return buffer.clear();
+        }
+
+        /**
+         * Keep a buffer, replacing a smaller one if this thread already keeps enough.
+         *
+         * @return false if the buffer was not kept
+         */
+        private synchronized boolean offer(ByteBuffer buffer) {
+            final int capacity = buffer.capacity();
+            int slot = -1;
+            for (int i = 0; i < BUFFERS_PER_THREAD; i++) {
+                if (this.buffers[i] == null) {
+                    slot = i;
+                    break;
+                }
+                if (this.buffers[i].capacity() < capacity && (slot < 0 || this.buffers[i].capacity() < this.buffers[slot].capacity())) {
+                    slot = i;
+                }
+            }
+            if (slot < 0) return false;
+            final long replaced = this.buffers[slot] != null ? this.buffers[slot].capacity() : 0;
+            if (pooledBytes.addAndGet(capacity - replaced) > Config.nbtWriterBufferPoolBytes) {
+                pooledBytes.addAndGet(replaced - capacity);
+                return false;
+            }
+            if (this.buffers[slot] != null) free(this.buffers[slot]);
+            this.buffers[slot] = buffer;
+            return true;
+        }
+
+        private synchronized void clear() {
+            for (int i = 0; i < BUFFERS_PER_THREAD; i++) {
+                if (this.buffers[i] != null) {
+                    free(this.buffers[i]);
+                    pooledBytes.addAndGet(-this.buffers[i].capacity());
+                    this.buffers[i] = null;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtTagSizeTracker;
+import net.minecraft.nbt.NbtTypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Forward-only cursor over an uncompressed NBT payload, the reading counterpart of {@link NbtWriter}.
+ * Entry names are matched against names encoded by {@link NbtWriter#getAsciiStringBytes(String)}
+ * in place, without decoding them.
+ */
+@SuppressWarnings("WeakerAccess")
+public class NbtReader {
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // same limit as NbtIo
+    private static final int MAX_DEPTH = 512;
+
+    private final byte[] buffer;
+    private int offset;
+    private int nameOffset;
+
+    public NbtReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read the type and name of the root tag.
+     *
+     * @return the type of the root tag
+     */
+    public byte start() {
+        return this.nextEntry();
+    }
+
+    /**
+     * Read the type and name of the next entry of the current compound.
+     *
+     * @return the type of the entry, {@link NbtElement#END_TYPE} at the end of the compound
+     */
+    public byte nextEntry() {
+        final byte type = this.readByte();
+        if (type != NbtElement.END_TYPE) {
+            this.nameOffset = this.offset;
+            this.offset += 2 + this.readUnsignedShortAt(this.offset);
+        }
+        return type;
+    }
+
+    /**
+     * @param name a name as encoded by {@link NbtWriter#getAsciiStringBytes(String)}
+     * @return whether the name of the current entry is this name
+     */
+    public boolean isName(byte[] name) {
+        final int end = this.nameOffset + name.length;
+        return end <= this.buffer.length && Arrays.equals(this.buffer, this.nameOffset, end, name, 0, name.length);
+    }
+
+    public String getName() {
+        return this.decodeString(this.nameOffset);
+    }
+
+    //region values
+
+    public byte readByte() {
+        return this.buffer[this.offset++];
+    }
+
+    public short readShort() {
+        final short value = (short) SHORT.get(this.buffer, this.offset);
+        this.offset += 2;
+        return value;
+    }
+
+    public int readInt() {
+        final int value = (int) INT.get(this.buffer, this.offset);
+        this.offset += 4;
+        return value;
+    }
+
+    public long readLong() {
+        final long value = (long) LONG.get(this.buffer, this.offset);
+        this.offset += 8;
+        return value;
+    }
+
+    public byte[] readByteArray() {
+        final int length = this.readInt();
+        final byte[] value = Arrays.copyOfRange(this.buffer, this.offset, this.offset + length);
+        this.offset += length;
+        return value;
+    }
+
+    public long[] readLongArray() {
+        final int length = this.readInt();
+        if (length < 0 || this.offset + (long) length * 8 > this.buffer.length) {
+            throw new IndexOutOfBoundsException("Long array of length " + length + " at " + this.offset);
+        }
+        final long[] value = new long[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (long) LONG.get(this.buffer, this.offset);
+            this.offset += 8;
+        }
+        return value;
+    }
+
+    public String readString() {
+        final String value = this.decodeString(this.offset);
+        this.offset += 2 + this.readUnsignedShortAt(this.offset);
+        return value;
+    }
+
+    /**
+     * Read the header of a list.
+     *
+     * @return the type of the elements, followed by {@link #readInt()} for their count
+     */
+    public byte readListType() {
+        return this.readByte();
+    }
+
+    /**
+     * Read a whole subtree the way {@link net.minecraft.nbt.NbtIo} does, for data that is not read in place.
+     */
+    public NbtElement readElement(byte type, int depth) throws IOException {
+        final ByteArrayInputStream input = new ByteArrayInputStream(this.buffer, this.offset, this.buffer.length - this.offset);
+        final NbtElement element = NbtTypes.byId(type).read(new DataInputStream(input), depth, NbtTagSizeTracker.EMPTY);
+        this.offset = this.buffer.length - input.available();
+        return element;
+    }
+
+    //endregion
+
+    public void skip(byte type) {
+        this.skip(type, 0);
+    }
+
+    private void skip(byte type, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+        switch (type) {
+            case NbtElement.END_TYPE -> {
+            }
+            case NbtElement.BYTE_TYPE -> this.offset += 1;
+            case NbtElement.SHORT_TYPE -> this.offset += 2;
+            case NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> this.offset += 4;
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> this.offset += 8;
+            case NbtElement.BYTE_ARRAY_TYPE -> this.offset += this.readInt();
+            case NbtElement.STRING_TYPE -> this.offset += 2 + this.readUnsignedShortAt(this.offset);
+            case NbtElement.LIST_TYPE -> {
+                final byte elementType = this.readByte();
+                final int count = this.readInt();
+                final int size = fixedSize(elementType);
+                if (size >= 0) {
+                    this.offset = Math.addExact(this.offset, Math.multiplyExact(count, size));
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        this.skip(elementType, depth + 1);
+                    }
+                }
+            }
+            case NbtElement.COMPOUND_TYPE -> {
+                byte entryType;
+                while ((entryType = this.nextEntry()) != NbtElement.END_TYPE) {
+                    this.skip(entryType, depth + 1);
+                }
+            }
+            case NbtElement.INT_ARRAY_TYPE -> this.offset += Math.multiplyExact(this.readInt(), 4);
+            case NbtElement.LONG_ARRAY_TYPE -> this.offset += Math.multiplyExact(this.readInt(), 8);
+            default -> throw new IllegalStateException("Invalid tag type " + type);
+        }
+        if (this.offset < 0 || this.offset > this.buffer.length) {
+            throw new IndexOutOfBoundsException("Tag of type " + type + " ends past the payload");
+        }
+    }
+
+    private static int fixedSize(byte type) {
+        return switch (type) {
+            case NbtElement.END_TYPE -> 0;
+            case NbtElement.BYTE_TYPE -> 1;
+            case NbtElement.SHORT_TYPE -> 2;
+            case NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> 4;
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> 8;
+            default -> -1;
+        };
+    }
+
+    private int readUnsignedShortAt(int offset) {
+        return (short) SHORT.get(this.buffer, offset) & 0xFFFF;
+    }
+
+    private String decodeString(int offset) {
+        final int length = this.readUnsignedShortAt(offset);
+        final int start = offset + 2;
+        boolean ascii = true;
+        for (int i = start, end = start + length; i < end; i++) {
+            if (this.buffer[i] <= 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return new String(this.buffer, start, length, StandardCharsets.ISO_8859_1);
+        }
+        // modified UTF-8
+        try {
+            return new DataInputStream(new ByteArrayInputStream(this.buffer, offset, 2 + length)).readUTF();
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed string at " + offset, e);
+        }
+    }
+
+}
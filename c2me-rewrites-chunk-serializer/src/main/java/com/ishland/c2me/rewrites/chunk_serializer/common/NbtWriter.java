@@ -12,6 +12,7 @@ import org.jetbrains.annotations.NotNull;
 import sun.misc.Unsafe;
 
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
@@ -25,8 +26,10 @@ public class NbtWriter {
     private static final int INT_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(int[].class);
     private static final int LONG_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(long[].class);
 
-    private long size = 1024 * 64;
-    private long buffer = UNSAFE.allocateMemory(this.size);
+    // pooled: starts out at the size this thread needed before
+    private ByteBuffer memory = NativeBufferPool.acquire(NativeBufferPool.MIN_CAPACITY);
+    private long buffer = NativeBufferPool.address(this.memory);
+    private long size = this.memory.capacity();
     private long remaining = this.size;
     private long pointer = this.buffer;
 
@@ -34,15 +37,30 @@ public class NbtWriter {
 
     private void claimCapacity(long extra) {
         this.remaining -= extra;
-        while (this.remaining < 0) {
-            this.remaining += this.size * (INCREMENT - 1);
-            this.size *= INCREMENT;
-            long offset = this.getOffset();
-            this.buffer = UNSAFE.reallocateMemory(this.buffer, this.size);
-            this.pointer = this.buffer + offset;
+        if (this.remaining < 0) {
+            this.grow();
         }
     }
 
+    private void grow() {
+        final long offset = this.getOffset();
+        final long required = this.size - this.remaining;
+        long newSize = this.size;
+        while (newSize < required) {
+            newSize *= INCREMENT;
+        }
+        final ByteBuffer newMemory = NativeBufferPool.acquire(newSize);
+        final long newBuffer = NativeBufferPool.address(newMemory);
+        final long capacity = newMemory.capacity();
+        UNSAFE.copyMemory(this.buffer, newBuffer, offset);
+        NativeBufferPool.release(this.memory);
+        this.memory = newMemory;
+        this.buffer = newBuffer;
+        this.pointer = newBuffer + offset;
+        this.remaining += capacity - this.size;
+        this.size = capacity;
+    }
+
     public long getOffset() {
         return this.pointer - this.buffer;
     }
@@ -398,6 +416,14 @@ public class NbtWriter {
     }
 
 
+    /**
+     * Append data encoded earlier, see {@link #copyOf(long, long)}.
+     */
+    public void putRaw(byte[] encoded) {
+        this.claimCapacity(encoded.length);
+        this.insertByteArray(encoded);
+    }
+
     @Deprecated
     public void putElement(String name, NbtElement data) {
         this.getVisitor().visit(name, data);
@@ -488,15 +514,34 @@ public class NbtWriter {
         return this.visitor;
     }
 
+    /**
+     * @return a copy of the data written between two offsets, which {@link #putRaw(byte[])}
+     * can put back as long as it does not contain unfinished lists
+     */
+    public byte[] copyOf(long from, long to) {
+        var bytes = new byte[(int) (to - from)];
+        UNSAFE.copyMemory(null, this.buffer + from, bytes, BYTE_ARRAY_OFFSET, bytes.length);
+        return bytes;
+    }
+
     public byte[] toByteArray() {
         var bytes = new byte[(int) (this.getOffset())];
         UNSAFE.copyMemory(null, this.buffer, bytes, BYTE_ARRAY_OFFSET, bytes.length);
         return bytes;
     }
 
+    /**
+     * View of the written data in place, for consumers that can read from native memory.
+     * Only valid until the writer grows or is released.
+     */
+    public ByteBuffer asByteBuffer() {
+        return this.memory.duplicate().position(0).limit((int) this.getOffset());
+    }
+
     public void release() {
-        if (this.buffer != 0) {
-            UNSAFE.freeMemory(this.buffer);
+        if (this.memory != null) {
+            NativeBufferPool.release(this.memory);
+            this.memory = null;
             this.buffer = 0;
         }
     }
@@ -0,0 +1,8 @@
+package com.ishland.c2me.rewrites.chunk_serializer.common;
+
+public interface StructureStartAccessor {
+    /**
+     * @return a counter bumped whenever the pieces of the start may have changed
+     */
+    int getModificationCount();
+}
@@ -0,0 +1,34 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import com.ishland.c2me.rewrites.chunk_serializer.common.ChunkSectionAccessor;
+import net.minecraft.block.BlockState;
+import net.minecraft.world.chunk.ChunkSection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSection.class)
+public class ChunkSectionMixin implements ChunkSectionAccessor {
+
+    // plain field: saves are handed to other threads after the changes they have to see
+    @Unique
+    private int modificationCount;
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("HEAD"))
+    private void onSetBlockState(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        this.modificationCount++;
+    }
+
+    @Inject(method = "populateBiomes", at = @At("HEAD"))
+    private void onPopulateBiomes(CallbackInfo ci) {
+        this.modificationCount++;
+    }
+
+    @Override
+    public int getModificationCount() {
+        return this.modificationCount;
+    }
+}
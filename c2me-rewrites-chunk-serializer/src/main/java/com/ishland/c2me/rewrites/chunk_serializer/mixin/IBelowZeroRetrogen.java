@@ -0,0 +1,15 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import net.minecraft.world.gen.chunk.BelowZeroRetrogen;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.BitSet;
+
+@Mixin(BelowZeroRetrogen.class)
+public interface IBelowZeroRetrogen {
+
+    @Accessor
+    BitSet getMissingBedrock();
+
+}
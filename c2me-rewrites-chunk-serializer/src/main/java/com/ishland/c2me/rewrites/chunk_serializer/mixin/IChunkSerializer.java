@@ -0,0 +1,38 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.structure.StructureContext;
+import net.minecraft.structure.StructureStart;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.gen.structure.Structure;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+import java.util.Map;
+
+@Mixin(ChunkSerializer.class)
+public interface IChunkSerializer {
+
+    @Invoker
+    static Map<Structure, StructureStart> invokeReadStructureStarts(StructureContext context, NbtCompound nbt, long worldSeed) {
+        throw new AbstractMethodError();
+    }
+
+    @Invoker
+    static Map<Structure, LongSet> invokeReadStructureReferences(DynamicRegistryManager registryManager, ChunkPos pos, NbtCompound nbt) {
+        throw new AbstractMethodError();
+    }
+
+    @Invoker
+    @Nullable
+    static WorldChunk.EntityLoader invokeGetEntityLoadingCallback(ServerWorld world, NbtCompound nbt) {
+        throw new AbstractMethodError();
+    }
+
+}
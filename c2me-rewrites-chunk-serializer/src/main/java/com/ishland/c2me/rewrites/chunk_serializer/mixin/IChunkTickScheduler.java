@@ -0,0 +1,18 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import net.minecraft.world.tick.ChunkTickScheduler;
+import net.minecraft.world.tick.Tick;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+import java.util.List;
+
+@Mixin(ChunkTickScheduler.class)
+public interface IChunkTickScheduler {
+
+    @Invoker("<init>")
+    static <T> ChunkTickScheduler<T> create(List<Tick<T>> ticks) {
+        throw new AbstractMethodError();
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import com.mojang.serialization.DataResult;
+import net.minecraft.util.collection.IndexedIterable;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.ReadableContainer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(PalettedContainer.class)
+public interface IPalettedContainer {
+
+    @Invoker
+    static <T> DataResult<PalettedContainer<T>> invokeRead(IndexedIterable<T> idList, PalettedContainer.PaletteProvider paletteProvider, ReadableContainer.Serialized<T> serialized) {
+        throw new AbstractMethodError();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import net.minecraft.block.Block;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.util.math.EightWayDirection;
+import net.minecraft.world.chunk.UpgradeData;
+import net.minecraft.world.tick.Tick;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.EnumSet;
+import java.util.List;
+
+@Mixin(UpgradeData.class)
+public interface IUpgradeData {
+
+    @Accessor
+    EnumSet<EightWayDirection> getSidesToUpgrade();
+
+    @Accessor
+    List<Tick<Block>> getBlockTicks();
+
+    @Accessor
+    List<Tick<Fluid>> getFluidTicks();
+
+    @Accessor
+    int[][] getCenterIndicesToUpgrade();
+
+}
@@ -0,0 +1,30 @@
+package com.ishland.c2me.rewrites.chunk_serializer.mixin;
+
+import com.ishland.c2me.rewrites.chunk_serializer.common.StructureStartAccessor;
+import net.minecraft.structure.StructureStart;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Mixin(StructureStart.class)
+public class StructureStartMixin implements StructureStartAccessor {
+
+    // pieces are immutable after generation, except for what placing them records
+    // (placed chests, spawned witches, ...). Chunks of a start are placed concurrently
+    @Unique
+    private final AtomicInteger modificationCount = new AtomicInteger();
+
+    @Inject(method = "place", at = {@At("HEAD"), @At("RETURN")})
+    private void onPlace(CallbackInfo ci) {
+        this.modificationCount.incrementAndGet();
+    }
+
+    @Override
+    public int getModificationCount() {
+        return this.modificationCount.get();
+    }
+}
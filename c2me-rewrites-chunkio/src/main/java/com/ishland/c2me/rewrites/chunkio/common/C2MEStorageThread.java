@@ -2,19 +2,33 @@ package com.ishland.c2me.rewrites.chunkio.common;
 
 import com.ibm.asyncutil.util.Either;
 import com.ishland.c2me.base.common.GlobalExecutors;
-import com.ishland.c2me.base.common.structs.RawByteArrayOutputStream;
+import com.ishland.c2me.base.common.profiling.ChunkStorageIoEvent;
+import com.ishland.c2me.base.common.structs.ByteBufferInputStream;
+import com.ishland.c2me.base.common.structs.DynamicPriorityQueue;
+import com.ishland.c2me.base.common.theinterface.IPrioritizedStorage;
 import com.ishland.c2me.base.common.util.SneakyThrow;
-import com.ishland.c2me.base.mixin.access.IRegionBasedStorage;
 import com.ishland.c2me.base.mixin.access.IRegionFile;
 import com.ishland.c2me.opts.chunkio.common.ConfigConstants;
+import com.ishland.c2me.rewrites.chunk_serializer.common.NbtWriter;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMaps;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.scanner.NbtScanner;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.world.storage.RegionBasedStorage;
+import net.minecraft.world.storage.ChunkStreamVersion;
 import net.minecraft.world.storage.RegionFile;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -22,12 +36,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -43,6 +61,7 @@ public class C2MEStorageThread extends Thread {
     private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Storage");
 
     private static final AtomicLong SERIAL = new AtomicLong(0);
+    private static final Set<C2MEStorageThread> INSTANCES = ConcurrentHashMap.newKeySet();
 
     // C2ME fix: Queue size limits to prevent unbounded memory growth
     private static final int MAX_READ_QUEUE_SIZE = 8192;
@@ -56,11 +75,51 @@ public class C2MEStorageThread extends Thread {
     // bounded retries for failed region-file writes; storage-thread confined
     private static final int MAX_WRITE_RETRIES = 3;
 
-    private final RegionBasedStorage storage;
+    private final RegionFileCache regionFiles;
+    private final ChunkStreamVersion streamVersion;
+    private final StorageMetrics metrics;
+    @Nullable
+    private final MappedRegionReader mappedReader;
+    private final ChunkExistenceIndex existenceIndex;
+    // when set, writes are appended here and merged into region files later
+    @Nullable
+    private final ChunkJournal journal;
+    // previous journal generations, oldest first; deleted in order once the region
+    // files they were merged into are durable, as replaying an older generation alone
+    // would roll chunks back
+    private final ObjectArrayList<RetiredJournal> retiredJournals = new ObjectArrayList<>();
+    private long journalFirstAppend;
+    // region file compaction: when open regions were last checked, regions written since,
+    // regions found fragmented, and the one being compacted
+    private final Long2LongOpenHashMap compactionChecks = new Long2LongOpenHashMap();
+    private final LongLinkedOpenHashSet writtenRegions = new LongLinkedOpenHashSet();
+    private final LongLinkedOpenHashSet fragmentedRegions = new LongLinkedOpenHashSet();
+    private long compactionTarget = NO_COMPACTION_TARGET;
+    private long compactionBudget = 0;
+    private long compactionBudgetUpdated = System.nanoTime();
     private final Long2ReferenceLinkedOpenHashMap<Either<NbtCompound, byte[]>> writeBacklog = new Long2ReferenceLinkedOpenHashMap<>();
     private final Long2ReferenceLinkedOpenHashMap<Either<NbtCompound, byte[]>> cache = new Long2ReferenceLinkedOpenHashMap<>();
+    // WriteBacklogBudget bytes held by each cache entry; released when the entry is
+    // written, superseded, or given up on
+    private final Long2LongOpenHashMap cachedBytes = new Long2LongOpenHashMap();
     private final Long2IntOpenHashMap writeRetryCounts = new Long2IntOpenHashMap();
+    // fingerprints of the payloads last written or read per chunk, to skip rewriting unchanged
+    // chunks. Writes overwrite and reads only fill in, so a read racing with a write cannot
+    // win; reads also check the generation, which is bumped whenever the map is reset
+    private final Long2LongOpenHashMap fingerprints = new Long2LongOpenHashMap();
+    private int fingerprintGeneration = 0;
+    // compressed chunks waiting to be committed, grouped by region; see commitStagedWrites
+    private final Long2ReferenceOpenHashMap<StagedBatch> stagedWrites = new Long2ReferenceOpenHashMap<>();
+    private long stagedBytes = 0;
     private final ConcurrentLinkedQueue<ReadRequest> pendingReadRequests = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<PriorityHint> pendingPriorityHints = new ConcurrentLinkedQueue<>();
+    // storage-thread confined: reads are served in priority order, same-pos reads in arrival order
+    private final DynamicPriorityQueue<ChunkPos> readQueue = new DynamicPriorityQueue<>(IPrioritizedStorage.PRIORITY_COUNT);
+    private final Long2ReferenceOpenHashMap<ObjectArrayList<ReadRequest>> queuedReads = new Long2ReferenceOpenHashMap<>();
+    private final Long2IntOpenHashMap queuedReadPriorities = new Long2IntOpenHashMap();
+    private final Long2IntOpenHashMap stickyPriorityHints = new Long2IntOpenHashMap();
+    // regions of hinted, not yet requested reads; opened while idle
+    private final LongLinkedOpenHashSet pendingPreOpens = new LongLinkedOpenHashSet();
     private final ConcurrentLinkedQueue<WriteRequest> pendingWriteRequests = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
     private final Executor executor = command -> {
@@ -78,6 +137,8 @@ public class C2MEStorageThread extends Thread {
     // hash set: ObjectArraySet has O(n) add (contains scan) and the per-cycle
     // removeIf made write bursts O(n^2)
     private final ObjectOpenHashSet<CompletableFuture<Void>> writeFutures = new ObjectOpenHashSet<>();
+    // region files written since the last durable flush; storage-thread confined
+    private final ReferenceOpenHashSet<RegionFile> dirtyRegionFiles = new ReferenceOpenHashSet<>();
     private final Object sync = new Object();
 
     // C2ME fix: Monitoring fields to track queue sizes and warn about growth
@@ -85,9 +146,46 @@ public class C2MEStorageThread extends Thread {
     private final AtomicInteger writeQueueSize = new AtomicInteger(0);
     private volatile long lastQueueWarningTime = 0;
 
-    public C2MEStorageThread(Path directory, boolean dsync, String name) {
-        this.storage = new RegionBasedStorage(directory, dsync);
+    // hints for chunks that are never read would otherwise accumulate; they are best-effort
+    private static final int MAX_STICKY_PRIORITY_HINTS = 65536;
+    private static final int MAX_PENDING_PRE_OPENS = 256;
+    private static final int PRE_OPENS_PER_IDLE_CYCLE = 4;
+    private static final int MAX_FINGERPRINTS = 1 << 18;
+    // idle storage threads with background work wake up this often to do some of it
+    private static final long BACKGROUND_WORK_POLL_MILLIS = 1000;
+    private static final long NO_COMPACTION_TARGET = Long.MIN_VALUE;
+    private static final long COMPACTION_RECHECK_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int COMPACTION_CHECKS_PER_IDLE_CYCLE = 8;
+    private static final int MAX_COMPACTION_CHECKS = 4096;
+    private static final long MIN_COMPACTION_STEP_BYTES = 256 * 1024;
+    private static final long MAX_COMPACTION_STEP_BYTES = 1024 * 1024;
+    private static final long MIN_COMPACTION_FREE_BYTES = 1024 * 1024;
+    // an idle storage merges small journals this long after the last merge
+    private static final long JOURNAL_IDLE_MERGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * @param lane index of this thread among the storage threads of the directory
+     * @param journalGeneration first journal generation, see {@link ChunkJournal#replay}
+     */
+    public C2MEStorageThread(Path directory, boolean dsync, String name, int lane, long journalGeneration) {
+        this.stickyPriorityHints.defaultReturnValue(Integer.MAX_VALUE);
+        // vanilla RegionBasedStorage is no longer used, apply its dsync override here
+        this.regionFiles = new RegionFileCache(directory, com.ishland.c2me.opts.chunkio.common.Config.syncDiskWrites, Config.regionFileCacheSize, this.dirtyRegionFiles::remove);
+        this.streamVersion = ConfigConstants.chunkStreamVersionFor(directory);
+        this.mappedReader = Config.mmapReads ? new MappedRegionReader(directory) : null;
+        this.existenceIndex = new ChunkExistenceIndex(directory);
+        ChunkJournal journal = null;
+        if (Config.writeAheadJournal) {
+            try {
+                journal = new ChunkJournal(directory, lane, journalGeneration);
+            } catch (Throwable t) {
+                LOGGER.error("Failed to open chunk journal in {}, writing to region files directly", directory, t);
+            }
+        }
+        this.journal = journal;
         this.setName("C2ME Storage #%d".formatted(SERIAL.incrementAndGet()));
+        this.metrics = new StorageMetrics("%s (%s)".formatted(this.getName(), directory));
+        INSTANCES.add(this);
         this.setDaemon(true);
         this.setUncaughtExceptionHandler((t, e) -> LOGGER.error("Thread %s died".formatted(t), e));
         this.start();
@@ -95,23 +193,30 @@ public class C2MEStorageThread extends Thread {
 
     @Override
     public void run() {
+        // woken up for background work rather than by requests: don't spin-wait afterwards
+        boolean backgroundWakeup = false;
         main_loop:
         while (true) {
             boolean hasWork = false;
             hasWork |= pollTasks();
+            if (hasWork) backgroundWakeup = false;
 
             runWriteFutureGC();
 
             if (!hasWork) {
                 if (this.closing.get()) {
-                    flush0(true);
+                    // sync through the group commit first: RegionFile.close() below
+                    // syncs each file again, but then there is little left to sync
+                    flush0(true).join();
                     // requests that arrived during the flush: go around again
-                    if (this.hasPendingTasks()) continue;
+                    if (this.hasPendingTasks() || !this.stagedWrites.isEmpty()) continue;
+                    if (this.journal != null) closeJournal();
                     try {
-                        this.storage.close();
+                        this.regionFiles.close();
                     } catch (Throwable t) {
                         LOGGER.error("Error closing storage", t);
                     }
+                    if (this.mappedReader != null) this.mappedReader.close();
                     // post-close sweep: late stragglers must not hang (reads) or
                     // vanish silently (writes)
                     ReadRequest readRequest;
@@ -120,18 +225,24 @@ public class C2MEStorageThread extends Thread {
                         readRequest.future().completeExceptionally(new CancellationException("Storage closed"));
                     }
                     int droppedWrites = 0;
-                    while (this.pendingWriteRequests.poll() != null) {
+                    WriteRequest writeRequest;
+                    while ((writeRequest = this.pendingWriteRequests.poll()) != null) {
                         writeQueueSize.decrementAndGet();
+                        WriteBacklogBudget.release(writeRequest.bytes);
                         droppedWrites++;
                     }
                     if (droppedWrites > 0) {
                         LOGGER.error("{} chunk write(s) submitted after storage close were DROPPED", droppedWrites);
                     }
+                    INSTANCES.remove(this);
                     this.closeFuture.complete(null);
                     break;
                 } else {
+                    if (preOpenRegionFiles()) continue;
+                    if (mergeJournalWhenIdle()) continue;
+                    if (compactRegionFiles()) continue;
                     // attempt to spin-wait before sleeping
-                    if (!pollTasks()) {
+                    if (!backgroundWakeup && !pollTasks()) {
                         Thread.interrupted(); // clear interrupt flag
                         for (int i = 0; i < 5000; i ++) {
                             if (pollTasks()) continue main_loop;
@@ -141,9 +252,10 @@ public class C2MEStorageThread extends Thread {
                     synchronized (sync) {
                         if (this.hasPendingTasks() || this.closing.get()) continue main_loop;
                         try {
-                            sync.wait();
+                            sync.wait(this.waitTimeoutMillis());
                         } catch (InterruptedException ignored) {
                         }
+                        backgroundWakeup = !this.hasPendingTasks();
                     }
                 }
             }
@@ -167,9 +279,11 @@ public class C2MEStorageThread extends Thread {
         // read load the backlog must still drain, or it grows without bound and every
         // backlogged chunk is lost on crash. Past the force-flush threshold the read
         // gating is ignored entirely.
-        final int writeBudget = (pendingReadRequests.isEmpty() || this.writeBacklog.size() >= BACKLOG_FORCE_FLUSH_SIZE)
+        final int writeBudget = (pendingReadRequests.isEmpty() || this.writeBacklog.size() >= BACKLOG_FORCE_FLUSH_SIZE || WriteBacklogBudget.isOverSoftLimit())
                 ? MAX_WRITES_PER_CYCLE : MIN_WRITES_PER_CYCLE_UNDER_READS;
         hasWork = writeBacklog(writeBudget) || hasWork;
+        hasWork = commitStagedWrites(false) || hasWork;
+        hasWork = mergeJournalWhenFull() || hasWork;
         return hasWork;
     }
 
@@ -177,6 +291,25 @@ public class C2MEStorageThread extends Thread {
         return !this.pendingTasks.isEmpty() || !this.pendingReadRequests.isEmpty() || !this.pendingWriteRequests.isEmpty() || !this.writeBacklog.isEmpty();
     }
 
+    private boolean hasBackgroundWork() {
+        return (this.journal != null && !this.journal.isEmpty()) || this.compactionTarget != NO_COMPACTION_TARGET || !this.fragmentedRegions.isEmpty();
+    }
+
+    /**
+     * @return how long an idle storage thread may sleep, 0 for until woken up
+     */
+    private long waitTimeoutMillis() {
+        long timeout = this.hasBackgroundWork() ? BACKGROUND_WORK_POLL_MILLIS : 0;
+        if (!this.stagedWrites.isEmpty()) {
+            final long now = System.nanoTime();
+            for (StagedBatch batch : this.stagedWrites.values()) {
+                final long due = Math.max(1, TimeUnit.NANOSECONDS.toMillis(batch.since + BATCH_WINDOW_NANOS - now + 999_999));
+                if (timeout == 0 || due < timeout) timeout = due;
+            }
+        }
+        return timeout;
+    }
+
     private void wakeUp() {
         synchronized (sync) {
             sync.notifyAll();
@@ -190,12 +323,40 @@ public class C2MEStorageThread extends Thread {
      * @return future
      */
     public CompletableFuture<NbtCompound> getChunkData(long pos, NbtScanner scanner) {
-        final CompletableFuture<NbtCompound> future = new CompletableFuture<>();
+        return getChunkData(pos, scanner, IPrioritizedStorage.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * @param priority see {@link IPrioritizedStorage}, lower is served first
+     * @see #getChunkData(long, NbtScanner)
+     */
+    public CompletableFuture<NbtCompound> getChunkData(long pos, NbtScanner scanner, int priority) {
+        return read0(pos, scanner, false, priority);
+    }
+
+    /**
+     * Read the uncompressed NBT payload of a chunk without parsing it.
+     * The returned array may be shared with the cache and must not be modified.
+     * @param priority see {@link IPrioritizedStorage}, lower is served first
+     * @return future of the payload, or of null if the chunk does not exist
+     */
+    public CompletableFuture<byte[]> getChunkBytes(long pos, int priority) {
+        return read0(pos, null, true, priority);
+    }
+
+    private <T> CompletableFuture<T> read0(long pos, @Nullable NbtScanner scanner, boolean raw, int priority) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
         if (this.closing.get()) {
             future.completeExceptionally(new CancellationException());
             return future;
         }
 
+        // never generated, e.g. fresh terrain: no need to involve the storage thread
+        if (this.existenceIndex.isKnownMissing(pos)) {
+            future.complete(null);
+            return future;
+        }
+
         // C2ME fix: Check queue size and warn about potential memory issues
         final int currentReadQueueSize = readQueueSize.incrementAndGet();
         if (currentReadQueueSize > MAX_READ_QUEUE_SIZE) {
@@ -208,7 +369,7 @@ public class C2MEStorageThread extends Thread {
             }
         }
 
-        this.pendingReadRequests.add(new ReadRequest(pos, future, scanner));
+        this.pendingReadRequests.add(new ReadRequest(pos, future, scanner, raw, priority));
         // C2ME fix: Always wake up to avoid lost wakeup race condition
         this.wakeUp();
         future.thenApply(Function.identity()).orTimeout(60, TimeUnit.SECONDS).exceptionally(throwable -> {
@@ -220,20 +381,32 @@ public class C2MEStorageThread extends Thread {
         return future;
     }
 
-    public void setChunkData(long pos, @Nullable NbtCompound nbt) {
-        writeQueueSize.incrementAndGet();
-        warnWriteAccumulation(pos);
-        this.pendingWriteRequests.add(new WriteRequest(pos, nbt != null ? Either.left(nbt) : null));
-        // C2ME fix: Always wake up to avoid lost wakeup race condition
-        this.wakeUp();
+    /**
+     * Queue chunk data for writing. The data is always accepted.
+     * @return a future that is incomplete while the write backlog is over its hard limit;
+     *         producers should wait on it before producing more chunk data
+     */
+    public CompletableFuture<Void> setChunkData(long pos, @Nullable NbtCompound nbt) {
+        final long bytes = nbt != null ? NbtSizeEstimator.estimate(nbt) : 0;
+        return setChunkData0(new WriteRequest(pos, nbt != null ? Either.left(nbt) : null, bytes));
     }
 
-    public void setChunkData(long pos, @Nullable byte[] data) {
+    /**
+     * @see #setChunkData(long, NbtCompound)
+     */
+    public CompletableFuture<Void> setChunkData(long pos, @Nullable byte[] data) {
+        return setChunkData0(new WriteRequest(pos, data != null ? Either.right(data) : null, data != null ? data.length : 0));
+    }
+
+    private CompletableFuture<Void> setChunkData0(WriteRequest writeRequest) {
         writeQueueSize.incrementAndGet();
-        warnWriteAccumulation(pos);
-        this.pendingWriteRequests.add(new WriteRequest(pos, data != null ? Either.right(data) : null));
+        warnWriteAccumulation(writeRequest.pos);
+        final CompletableFuture<Void> backpressure = WriteBacklogBudget.acquire(writeRequest.bytes);
+        this.existenceIndex.beforeWrite(writeRequest.pos, writeRequest.nbt == null);
+        this.pendingWriteRequests.add(writeRequest);
         // C2ME fix: Always wake up to avoid lost wakeup race condition
         this.wakeUp();
+        return backpressure;
     }
 
     /**
@@ -260,14 +433,44 @@ public class C2MEStorageThread extends Thread {
         }
     }
 
+    public static Collection<C2MEStorageThread> getInstances() {
+        return Collections.unmodifiableSet(INSTANCES);
+    }
+
+    public StorageMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    // the following read storage-thread-confined structures from other threads; racy but
+    // harmless for monitoring purposes, see warnWriteAccumulation
+
+    public int getPendingReads() {
+        return this.readQueueSize.get();
+    }
+
+    public int getPendingWrites() {
+        return this.writeQueueSize.get();
+    }
+
+    public int getWriteBacklogSize() {
+        return this.writeBacklog.size();
+    }
+
+    public int getInFlightWrites() {
+        return this.writeFutures.size();
+    }
+
     public CompletableFuture<Void> flush(boolean sync) {
         // after thread exit nothing drains pendingTasks; everything was already
         // flushed during close, so don't strand the caller on a dead queue
         if (this.closeFuture.isDone()) return CompletableFuture.completedFuture(null);
-        return CompletableFuture.runAsync(() -> flush0(sync), this.executor);
+        return CompletableFuture.supplyAsync(() -> flush0(sync), this.executor).thenCompose(Function.identity());
     }
 
-    private void flush0(boolean sync) {
+    /**
+     * @return a future completing once the region files written so far are durable if sync is set
+     */
+    private CompletableFuture<Void> flush0(boolean sync) {
         try {
             while (true) {
                 runWriteFutureGC();
@@ -280,10 +483,20 @@ public class C2MEStorageThread extends Thread {
                 break;
             }
             flushBacklog();
-            if (sync) this.storage.sync();
+            if (sync) return syncDirtyRegionFiles();
         } catch (Throwable t) {
             LOGGER.error("Error flushing storage", t);
         }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Void> syncDirtyRegionFiles() {
+        final ObjectArrayList<RegionFile> regionFiles = new ObjectArrayList<>(this.dirtyRegionFiles);
+        this.dirtyRegionFiles.clear();
+        return GroupCommitSync.sync(regionFiles, this.journal).exceptionally(throwable -> {
+            LOGGER.error("Error syncing storage", throwable);
+            return null;
+        });
     }
 
     public CompletableFuture<Void> close() {
@@ -314,73 +527,334 @@ public class C2MEStorageThread extends Thread {
             // C2ME fix: Decrement queue size counter
             writeQueueSize.decrementAndGet();
             this.cache.put(writeRequest.pos, writeRequest.nbt);
+            this.existenceIndex.onWriteIntake(writeRequest.pos);
+            WriteBacklogBudget.release(this.cachedBytes.put(writeRequest.pos, writeRequest.bytes)); // superseded entry
             this.writeBacklog.put(writeRequest.pos, writeRequest.nbt);
+            if (writeRequest.nbt != null && writeRequest.nbt.left().isPresent()) {
+                scheduleTreeEncoding(writeRequest.pos, writeRequest.nbt);
+            }
         }
         return hasWork;
     }
 
+    /**
+     * Re-encode a cached NbtCompound into its binary form on a worker. A live tree
+     * retains several times the heap of its encoding, and byte entries are what the
+     * write path and cache hits consume anyway.
+     */
+    private void scheduleTreeEncoding(long pos, Either<NbtCompound, byte[]> entry) {
+        CompletableFuture.supplyAsync(() -> encode(entry.left().get()), GlobalExecutors.executor)
+                .thenAcceptAsync(bytes -> {
+                    // in-flight and staged writes match the cache by identity, so only
+                    // swap entries that have not left the backlog yet
+                    if (entry != this.cache.get(pos) || entry != this.writeBacklog.get(pos)) return;
+                    final Either<NbtCompound, byte[]> encoded = Either.right(bytes);
+                    this.cache.put(pos, encoded);
+                    this.writeBacklog.put(pos, encoded);
+                    WriteBacklogBudget.acquire(bytes.length);
+                    WriteBacklogBudget.release(this.cachedBytes.put(pos, bytes.length));
+                }, this.executor)
+                .exceptionally(throwable -> {
+                    LOGGER.warn("Failed to encode cached chunk tree {}, keeping it as is", new ChunkPos(pos), throwable);
+                    return null;
+                });
+    }
+
+    private static byte[] encode(NbtCompound compound) {
+        final NbtWriter writer = write(compound);
+        try {
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * @return a writer holding the binary form of the compound, to be released by the caller
+     */
+    private static NbtWriter write(NbtCompound compound) {
+        final NbtWriter writer = new NbtWriter();
+        try {
+            // same layout as NbtIo.write: root tag type, empty name, then the entries
+            writer.start(NbtElement.COMPOUND_TYPE);
+            compound.accept(writer.getVisitor());
+            return writer;
+        } catch (Throwable t) {
+            writer.release();
+            throw t;
+        }
+    }
+
+    /**
+     * Hint the priority of reads of a chunk, see {@link IPrioritizedStorage#prioritizeRead}.
+     */
+    public void prioritizeRead(long pos, int priority, boolean sticky) {
+        this.pendingPriorityHints.add(new PriorityHint(pos, priority, sticky));
+        // no wakeup: hints only matter once a read is queued, and reads wake us up
+    }
+
+    private void handlePriorityHints() {
+        PriorityHint hint;
+        while ((hint = this.pendingPriorityHints.poll()) != null) {
+            final int queued = this.queuedReadPriorities.getOrDefault(hint.pos, -1);
+            if (queued >= 0) {
+                if (hint.priority < queued) {
+                    this.readQueue.changePriority(new ChunkPos(hint.pos), hint.priority);
+                    this.queuedReadPriorities.put(hint.pos, hint.priority);
+                }
+            } else if (hint.sticky) {
+                if (this.stickyPriorityHints.size() >= MAX_STICKY_PRIORITY_HINTS) {
+                    this.stickyPriorityHints.clear();
+                }
+                if (hint.priority < this.stickyPriorityHints.get(hint.pos)) {
+                    this.stickyPriorityHints.put(hint.pos, hint.priority);
+                }
+                if (this.pendingPreOpens.size() >= MAX_PENDING_PRE_OPENS) {
+                    this.pendingPreOpens.removeFirstLong();
+                }
+                this.pendingPreOpens.add(ChunkPos.toLong(ChunkPos.getPackedX(hint.pos) >> 5, ChunkPos.getPackedZ(hint.pos) >> 5));
+            }
+        }
+    }
+
+    /**
+     * Open a few region files of upcoming reads. Only called when there is nothing else to do.
+     */
+    private boolean preOpenRegionFiles() {
+        if (this.pendingPreOpens.isEmpty()) return false;
+        for (int i = 0; i < PRE_OPENS_PER_IDLE_CYCLE && !this.pendingPreOpens.isEmpty(); i++) {
+            this.regionFiles.preOpen(this.pendingPreOpens.removeFirstLong());
+        }
+        return true;
+    }
+
+    /**
+     * Compact a fragmented open region file a step at a time, within the I/O budget.
+     * Only called when there is nothing else to do. Chunk data does not change, and
+     * region files are only written on this thread, so writes need no coordination.
+     */
+    private boolean compactRegionFiles() {
+        if (!Config.regionCompaction) return false;
+        final long now = System.nanoTime();
+        // checks cost no I/O budget
+        if (findFragmentedRegions(now)) return true;
+        final long elapsed = Math.min(now - this.compactionBudgetUpdated, TimeUnit.SECONDS.toNanos(1));
+        this.compactionBudgetUpdated = now;
+        this.compactionBudget = Math.min(MAX_COMPACTION_STEP_BYTES, this.compactionBudget + elapsed * Config.regionCompactionBytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        if (this.compactionBudget < MIN_COMPACTION_STEP_BYTES) return false;
+        if (this.compactionTarget == NO_COMPACTION_TARGET) {
+            if (this.fragmentedRegions.isEmpty()) return false;
+            this.compactionTarget = this.fragmentedRegions.removeFirstLong();
+        }
+        final long regionKey = this.compactionTarget;
+        final RegionFile regionFile = this.regionFiles.getIfOpen(regionKey);
+        if (regionFile == null) { // evicted meanwhile
+            this.compactionTarget = NO_COMPACTION_TARGET;
+            return true;
+        }
+        try {
+            // mappings are only dropped by the GC, so with mapped reads the file is never
+            // truncated under one; moved chunks still make slices in flight stale
+            if (this.mappedReader != null) {
+                this.mappedReader.onRegionWrite(new ChunkPos(ChunkPos.getPackedX(regionKey) << 5, ChunkPos.getPackedZ(regionKey) << 5));
+            }
+            final long moved = ((ICompactableRegionFile) regionFile).compactStep(this.compactionBudget, this.mappedReader == null);
+            this.dirtyRegionFiles.add(regionFile);
+            this.compactionBudget -= moved;
+            this.metrics.bytesCompacted.addAndGet(moved);
+            if (moved == 0) this.compactionTarget = NO_COMPACTION_TARGET;
+        } catch (Throwable t) {
+            LOGGER.error("Error compacting region file r.{}.{}.mca", ChunkPos.getPackedX(regionKey), ChunkPos.getPackedZ(regionKey), t);
+            this.compactionTarget = NO_COMPACTION_TARGET;
+        }
+        return true;
+    }
+
+    /**
+     * Check the regions written to since their last check, then open regions that were
+     * not checked for a while, for free space worth compacting.
+     *
+     * @return whether any region was checked
+     */
+    private boolean findFragmentedRegions(long now) {
+        if (this.compactionChecks.size() >= MAX_COMPACTION_CHECKS) this.compactionChecks.clear();
+        int checks = 0;
+        while (!this.writtenRegions.isEmpty() && checks < COMPACTION_CHECKS_PER_IDLE_CYCLE) {
+            checkFragmentation(this.writtenRegions.removeFirstLong(), now);
+            checks++;
+        }
+        if (checks < COMPACTION_CHECKS_PER_IDLE_CYCLE) {
+            for (long regionKey : this.regionFiles.getOpenRegions()) {
+                if (checks >= COMPACTION_CHECKS_PER_IDLE_CYCLE) break;
+                if (this.compactionChecks.containsKey(regionKey) && now - this.compactionChecks.get(regionKey) < COMPACTION_RECHECK_INTERVAL_NANOS) {
+                    continue;
+                }
+                checkFragmentation(regionKey, now);
+                checks++;
+            }
+        }
+        return checks > 0;
+    }
+
+    private void checkFragmentation(long regionKey, long now) {
+        this.compactionChecks.put(regionKey, now);
+        if (regionKey == this.compactionTarget) return;
+        final RegionFile regionFile = this.regionFiles.getIfOpen(regionKey);
+        if (regionFile == null) {
+            this.fragmentedRegions.remove(regionKey);
+            return;
+        }
+        try {
+            final long fileSectors = ((ICompactableRegionFile) regionFile).getFileSectors();
+            final long freeSectors = fileSectors - ((ICompactableRegionFile) regionFile).getUsedSectors();
+            if (freeSectors * 4096 >= MIN_COMPACTION_FREE_BYTES && freeSectors * 100 >= fileSectors * Config.regionCompactionMinFreePercent) {
+                this.fragmentedRegions.add(regionKey);
+            } else {
+                this.fragmentedRegions.remove(regionKey);
+            }
+        } catch (Throwable t) {
+            LOGGER.debug("Failed to inspect region file r.{}.{}.mca", ChunkPos.getPackedX(regionKey), ChunkPos.getPackedZ(regionKey), t);
+        }
+    }
+
+    /**
+     * Must be called before writing to or deleting from the region file of the chunk.
+     */
+    private void beforeRegionWrite(ChunkPos pos) {
+        if (this.mappedReader != null) this.mappedReader.onRegionWrite(pos);
+        // rewritten chunks free their old sectors; checked for fragmentation once idle
+        if (Config.regionCompaction && this.writtenRegions.size() < MAX_COMPACTION_CHECKS) {
+            this.writtenRegions.add(ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ()));
+        }
+    }
+
+    private void enqueueRead(ReadRequest readRequest) {
+        final long pos = readRequest.pos;
+        ObjectArrayList<ReadRequest> requests = this.queuedReads.get(pos);
+        if (requests == null) {
+            requests = new ObjectArrayList<>(1);
+            this.queuedReads.put(pos, requests);
+            final int priority = Math.min(readRequest.priority, this.stickyPriorityHints.remove(pos));
+            this.readQueue.enqueue(new ChunkPos(pos), priority);
+            this.queuedReadPriorities.put(pos, priority);
+        } else if (readRequest.priority < this.queuedReadPriorities.get(pos)) {
+            this.readQueue.changePriority(new ChunkPos(pos), readRequest.priority);
+            this.queuedReadPriorities.put(pos, readRequest.priority);
+        }
+        requests.add(readRequest);
+    }
+
     private boolean handlePendingReads() {
         boolean hasWork = false;
-        while (!pendingReadRequests.isEmpty()) {
-            // This drain loop keeps consuming reads that arrive while it runs,
-            // so writes enqueued before those reads must be intaken first to
-            // keep the cache's read-your-writes guarantee.
-            handlePendingWrites();
-            ReadRequest readRequest = this.pendingReadRequests.poll();
+        while (true) {
+            // keep taking in reads that arrive while this runs so that an urgent
+            // read can overtake the rest of the queue
+            handlePriorityHints();
+            ReadRequest incoming;
+            while ((incoming = this.pendingReadRequests.poll()) != null) {
+                enqueueRead(incoming);
+            }
+            final ChunkPos chunkPos = this.readQueue.dequeue();
+            if (chunkPos == null) break;
             hasWork = true;
-            // C2ME fix: Decrement queue size counter
-            readQueueSize.decrementAndGet();
-            assert readRequest != null;
-            final long pos = readRequest.pos;
-            final CompletableFuture<NbtCompound> future = readRequest.future;
-            final NbtScanner scanner = readRequest.scanner;
-            // Single lookup optimization: get first, then only check containsKey for null case
-            final Either<NbtCompound, byte[]> cached = this.cache.get(pos);
-            if (cached != null) {
-                if (cached.left().isPresent()) {
-                    if (scanner != null) {
-                        GlobalExecutors.executor.execute(() -> {
-                            try {
-                                cached.left().get().accept(scanner);
-                                future.complete(null);
-                            } catch (Throwable t) {
-                                future.completeExceptionally(t);
-                            }
-                        });
-                    } else {
-                        future.complete(cached.left().get());
-                    }
+            final long pos = chunkPos.toLong();
+            this.queuedReadPriorities.remove(pos);
+            final ObjectArrayList<ReadRequest> requests = this.queuedReads.remove(pos);
+            // Reads taken in above may have been enqueued after writes that were
+            // not intaken yet; intake them first to keep the cache's read-your-writes
+            // guarantee.
+            handlePendingWrites();
+            for (ReadRequest readRequest : requests) {
+                // C2ME fix: Decrement queue size counter
+                readQueueSize.decrementAndGet();
+                serveRead(readRequest);
+            }
+        }
+        return hasWork;
+    }
+
+    private void serveRead(ReadRequest readRequest) {
+        final long pos = readRequest.pos;
+        final NbtScanner scanner = readRequest.scanner;
+        // Single lookup optimization: get first, then only check containsKey for null case
+        final Either<NbtCompound, byte[]> cached = this.cache.get(pos);
+        if (cached != null) {
+            this.metrics.cacheHits.incrementAndGet();
+            if (cached.left().isPresent()) {
+                if (scanner != null) {
+                    GlobalExecutors.executor.execute(() -> {
+                        try {
+                            cached.left().get().accept(scanner);
+                            readRequest.complete(null, null);
+                        } catch (Throwable t) {
+                            readRequest.complete(null, t);
+                        }
+                    });
+                } else if (readRequest.raw) {
+                    // encoding only reads the tree, like the concurrent tree encoding does
+                    CompletableFuture.supplyAsync(() -> encode(cached.left().get()), GlobalExecutors.executor)
+                            .whenComplete(readRequest::complete);
                 } else {
-                    CompletableFuture.supplyAsync(() -> {
-                                try {
-                                    final DataInputStream input = new DataInputStream(new ByteArrayInputStream(cached.right().get()));
-                                    if (scanner != null) {
-                                        NbtIo.scan(input, scanner);
-                                        return null;
-                                    } else {
-                                        final NbtCompound compound = NbtIo.read(input);
-                                        return compound;
-                                    }
-                                } catch (IOException e) {
-                                    SneakyThrow.sneaky(e);
-                                    return null; // unreachable
-                                }
-                            }, GlobalExecutors.executor)
-                            .thenAccept(future::complete)
-                            .exceptionally(throwable -> {
-                                future.completeExceptionally(throwable);
-                                return null;
-                            });
+                    // not encoded yet: the tree is still being encoded concurrently,
+                    // so hand out a copy rather than a tree the caller may mutate
+                    CompletableFuture.supplyAsync(() -> cached.left().get().copy(), GlobalExecutors.executor)
+                            .whenComplete(readRequest::complete);
                 }
-                continue;
-            } else if (this.cache.containsKey(pos)) {
-                // Key exists but value is null - chunk is known to not exist
-                future.complete(null);
-                continue;
+            } else if (readRequest.raw) {
+                // cached payloads are never modified once queued
+                readRequest.complete(cached.right().get(), null);
+            } else {
+                CompletableFuture.supplyAsync(() -> {
+                            try {
+                                final DataInputStream input = new DataInputStream(new ByteArrayInputStream(cached.right().get()));
+                                if (scanner != null) {
+                                    NbtIo.scan(input, scanner);
+                                    return null;
+                                } else {
+                                    final NbtCompound compound = NbtIo.read(input);
+                                    return compound;
+                                }
+                            } catch (IOException e) {
+                                SneakyThrow.sneaky(e);
+                                return null; // unreachable
+                            }
+                        }, GlobalExecutors.executor)
+                        .whenComplete(readRequest::complete);
             }
-            scheduleChunkRead(pos, future, scanner);
+            return;
+        } else if (this.cache.containsKey(pos)) {
+            // Key exists but value is null - chunk is known to not exist
+            readRequest.complete(null, null);
+            return;
         }
-        return hasWork;
+        if (this.journal != null && this.journal.contains(pos)) {
+            // written, not merged yet: the region file is stale
+            scheduleJournalRead(readRequest);
+            return;
+        }
+        if (this.existenceIndex.needsTrim()) {
+            this.existenceIndex.trim(this.unwrittenRegions());
+        }
+        if (this.existenceIndex.load(pos)) {
+            // spares opening, or even creating, the region file
+            readRequest.complete(null, null);
+            return;
+        }
+        scheduleChunkRead(readRequest);
+    }
+
+    /**
+     * @return regions with chunks that are only in the cache or the journal so far
+     */
+    private LongOpenHashSet unwrittenRegions() {
+        final LongOpenHashSet regions = new LongOpenHashSet();
+        for (long pos : this.cache.keySet()) {
+            regions.add(ChunkPos.toLong(ChunkPos.getPackedX(pos) >> 5, ChunkPos.getPackedZ(pos) >> 5));
+        }
+        if (this.journal != null) {
+            regions.addAll(this.journal.pendingRegions());
+        }
+        return regions;
     }
 
     // Maximum chunks to write per poll cycle when no reads are pending
@@ -389,6 +863,13 @@ public class C2MEStorageThread extends Thread {
     private static final int MIN_WRITES_PER_CYCLE_UNDER_READS = 1;
     // Backlog size beyond which read gating is ignored and writes flush at full rate
     private static final int BACKLOG_FORCE_FLUSH_SIZE = 1024;
+    // Chunks of 255 sectors or more are stored externally by vanilla and never batched
+    static final int MAX_BATCHED_CHUNK_BYTES = 255 * 4096;
+    // A region's staged writes are committed once the oldest waited BATCH_WINDOW_NANOS, or once they add up to BATCH_COMMIT_BYTES
+    private static final long BATCH_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long BATCH_COMMIT_BYTES = 1024 * 1024;
+    // Staged buffers are off-heap on top of the cached payloads, so all of them are committed past this
+    private static final long MAX_STAGED_BYTES = 16 * 1024 * 1024;
 
     private boolean writeBacklog() {
         return writeBacklog(MAX_WRITES_PER_CYCLE);
@@ -425,7 +906,9 @@ public class C2MEStorageThread extends Thread {
                 // write completions arrive as tasks on this thread, so keep
                 // draining - but park briefly when there is nothing to do
                 // instead of burning a core for the duration of the flush
-                if (!handleTasks()) {
+                boolean hasWork = handleTasks();
+                hasWork = commitStagedWrites(true) || hasWork;
+                if (!hasWork) {
                     LockSupport.parkNanos("Waiting for write completions", 100_000L);
                 }
             }
@@ -433,99 +916,197 @@ public class C2MEStorageThread extends Thread {
         }
     }
 
-    private void scheduleChunkRead(long pos, CompletableFuture<NbtCompound> future, NbtScanner scanner) {
+    private void scheduleChunkRead(ReadRequest readRequest) {
+        if (this.mappedReader != null && scheduleMappedChunkRead(readRequest)) return;
+        scheduleStreamChunkRead(readRequest);
+    }
+
+    /**
+     * Serve a read from the memory-mapped region view. Only the sector table is
+     * consulted here; the payload is decoded on a worker, which re-routes the read
+     * through the stream path if the payload needs vanilla handling or a region
+     * write raced with it.
+     *
+     * @return false if the mapped view cannot serve this read at all
+     */
+    private boolean scheduleMappedChunkRead(ReadRequest readRequest) {
+        final long pos = readRequest.pos;
+        final NbtScanner scanner = readRequest.scanner;
+        final long readStart = System.nanoTime();
+        final ChunkStorageIoEvent readEvent = this.metrics.beginEvent();
+        final MappedRegionReader.Slice slice;
         try {
+            slice = this.mappedReader.locate(new ChunkPos(pos));
+        } catch (Throwable t) {
+            LOGGER.debug("Falling back to stream read for chunk {}", new ChunkPos(pos), t);
+            return false;
+        }
+        this.metrics.record(StorageMetrics.Stage.READ, readStart, readEvent, pos, 1, slice != null ? slice.sectors().capacity() : 0);
+        if (slice == null) {
+            readRequest.complete(null, null);
+            return true;
+        }
+        final int fingerprintGeneration = this.fingerprintGeneration;
+        GlobalExecutors.executor.execute(() -> {
+            final long start = System.nanoTime();
+            final ChunkStorageIoEvent event = this.metrics.beginEvent();
+            try {
+                if (scanner != null) {
+                    // a scanner can't be rewound, so validate a private copy before feeding it
+                    final MappedRegionReader.Slice copy = slice.copy();
+                    if (copy.isCurrent()) {
+                        try (DataInputStream input = copy.open()) {
+                            if (input != null) {
+                                NbtIo.scan(input, scanner);
+                                this.metrics.chunksRead.incrementAndGet();
+                                this.metrics.record(StorageMetrics.Stage.DECOMPRESS, start, event, pos, 1, slice.sectors().capacity());
+                                readRequest.complete(null, null);
+                                return;
+                            }
+                        }
+                    }
+                } else {
+                    try (DataInputStream input = slice.open()) {
+                        if (input != null) {
+                            final ChunkFingerprint.Input fingerprint = new ChunkFingerprint.Input(input);
+                            final Object value = readRequest.readFully(fingerprint);
+                            if (slice.isCurrent()) {
+                                rememberReadFingerprint(pos, fingerprintGeneration, fingerprint);
+                                this.metrics.chunksRead.incrementAndGet();
+                                this.metrics.record(StorageMetrics.Stage.DECOMPRESS, start, event, pos, 1, slice.sectors().capacity());
+                                readRequest.complete(value, null);
+                                return;
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                if (scanner != null || slice.isCurrent()) {
+                    readRequest.complete(null, t);
+                    return;
+                }
+                // otherwise garbage from reused sectors; retry below
+            }
+            this.executor.execute(() -> scheduleStreamChunkRead(readRequest));
+        });
+        return true;
+    }
+
+    private void scheduleStreamChunkRead(ReadRequest readRequest) {
+        final long pos = readRequest.pos;
+        final NbtScanner scanner = readRequest.scanner;
+        try {
+            final long readStart = System.nanoTime();
+            final ChunkStorageIoEvent readEvent = this.metrics.beginEvent();
             final ChunkPos pos1 = new ChunkPos(pos);
-            final RegionFile regionFile = ((IRegionBasedStorage) this.storage).invokeGetRegionFile(pos1);
+            final RegionFile regionFile = this.regionFiles.get(pos1);
             final DataInputStream chunkInputStream = regionFile.getChunkInputStream(pos1);
+            // payload size is not exposed by the vanilla read path
+            this.metrics.record(StorageMetrics.Stage.READ, readStart, readEvent, pos, 1, 0);
             if (chunkInputStream == null) {
-                future.complete(null);
+                readRequest.complete(null, null);
                 return;
             }
+            final int fingerprintGeneration = this.fingerprintGeneration;
             CompletableFuture.supplyAsync(() -> {
+                final long start = System.nanoTime();
+                final ChunkStorageIoEvent event = this.metrics.beginEvent();
                 try {
                     try (DataInputStream inputStream = chunkInputStream) {
+                        final Object value;
                         if (scanner != null) {
                             NbtIo.scan(inputStream, scanner);
-                            return null;
+                            value = null;
                         } else {
-                            return NbtIo.read(inputStream);
+                            final ChunkFingerprint.Input fingerprint = new ChunkFingerprint.Input(inputStream);
+                            value = readRequest.readFully(fingerprint);
+                            rememberReadFingerprint(pos, fingerprintGeneration, fingerprint);
                         }
+                        this.metrics.chunksRead.incrementAndGet();
+                        this.metrics.record(StorageMetrics.Stage.DECOMPRESS, start, event, pos, 1, 0);
+                        return value;
                     }
                 } catch (Throwable t) {
                     SneakyThrow.sneaky(t);
                     return null; // Unreachable anyway
                 }
-            }, GlobalExecutors.executor).handle((compound, throwable) -> {
-                if (throwable != null) future.completeExceptionally(throwable);
-                else future.complete(compound);
-                return null;
-            });
+            }, GlobalExecutors.executor).whenComplete(readRequest::complete);
         } catch (Throwable t) {
-            future.completeExceptionally(t);
+            readRequest.complete(null, t);
         }
     }
 
     private void writeChunk(long pos, Either<NbtCompound, byte[]> nbt) {
         if (nbt == null) {
             if (this.cache.get(pos) == null) {
+                if (this.journal != null) {
+                    try {
+                        appendToJournal(pos, null);
+                        rememberWrittenFingerprint(pos, ChunkFingerprint.NONE);
+                    } catch (Throwable t) {
+                        LOGGER.error("Error writing chunk %s".formatted(new ChunkPos(pos)), t);
+                    }
+                    this.removeCached(pos);
+                    return;
+                }
                 try {
+                    final long start = System.nanoTime();
+                    final ChunkStorageIoEvent event = this.metrics.beginEvent();
                     final ChunkPos pos1 = new ChunkPos(pos);
-                    final RegionFile regionFile = ((IRegionBasedStorage) this.storage).invokeGetRegionFile(pos1);
+                    beforeRegionWrite(pos1);
+                    final RegionFile regionFile = this.regionFiles.get(pos1);
                     regionFile.delete(pos1);
+                    this.dirtyRegionFiles.add(regionFile);
+                    this.existenceIndex.onDelete(pos);
+                    rememberWrittenFingerprint(pos, ChunkFingerprint.NONE);
+                    this.metrics.record(StorageMetrics.Stage.WRITE, start, event, pos, 1, 0);
                 } catch (Throwable t) {
                     LOGGER.error("Error writing chunk %s".formatted(new ChunkPos(pos)), t);
                 }
-                this.cache.remove(pos);
+                this.removeCached(pos);
             }
         } else {
+            final long knownFingerprint = this.fingerprints.get(pos);
             final CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
+                final long start = System.nanoTime();
+                final ChunkStorageIoEvent event = this.metrics.beginEvent();
+                // trees are compressed straight out of the writer's native memory
+                final NbtWriter writer = nbt.left().isPresent() ? write(nbt.left().get()) : null;
                 try {
-                    final RawByteArrayOutputStream out = new RawByteArrayOutputStream(8096);
-                    // TODO [VanillaCopy] RegionFile.ChunkBuffer
-                    out.write(0);
-                    out.write(0);
-                    out.write(0);
-                    out.write(0);
-                    out.write(ConfigConstants.CHUNK_STREAM_VERSION.getId());
-                    try (DataOutputStream dataOutputStream = new DataOutputStream(ConfigConstants.CHUNK_STREAM_VERSION.wrap(out))) {
-                        if (nbt.left().isPresent()) {
-                            NbtIo.write(nbt.left().get(), dataOutputStream);
-                        } else {
-                            dataOutputStream.write(nbt.right().get());
-                        }
+                    final ByteBuffer payload = writer != null ? writer.asByteBuffer() : ByteBuffer.wrap(nbt.right().get());
+                    final long fingerprint = ChunkFingerprint.of(payload);
+                    if (fingerprint == knownFingerprint) {
+                        // same as on disk: spare the compression too
+                        return new EncodedWrite(null, fingerprint);
                     }
-                    return out;
+                    final ByteBuffer out = ChunkCompressor.compress(this.streamVersion, payload);
+                    this.metrics.record(StorageMetrics.Stage.COMPRESS, start, event, pos, 1, out.remaining());
+                    return new EncodedWrite(out, fingerprint);
                 } catch (Throwable t) {
                     SneakyThrow.sneaky(t);
                     return null; // Unreachable anyway
+                } finally {
+                    if (writer != null) writer.release();
                 }
-            }, GlobalExecutors.executor).thenAcceptAsync(bytes -> {
-                if (nbt == this.cache.get(pos)) { // only write if match to avoid overwrites
-                    try {
-                        final ChunkPos pos1 = new ChunkPos(pos);
-                        final RegionFile regionFile = ((IRegionBasedStorage) this.storage).invokeGetRegionFile(pos1);
-                        ByteBuffer byteBuffer = bytes.asByteBuffer();
-                        // TODO [VanillaCopy] RegionFile.ChunkBuffer
-                        byteBuffer.putInt(0, bytes.size() - 5 + 1);
-                        ((IRegionFile) regionFile).invokeWriteChunk(pos1, byteBuffer);
-                    } catch (Throwable t) {
-                        SneakyThrow.sneaky(t);
-                    }
-                    this.cache.remove(pos);
-                }
-            }, this.executor).handleAsync((unused, throwable) -> {
+            }, GlobalExecutors.executor).thenComposeAsync(encoded -> stageWrite(pos, nbt, encoded).whenComplete((unused, throwable) -> {
+                // written, superseded or failed: the buffer is no longer referenced
+                if (encoded.bytes != null) ChunkCompressor.release(encoded.bytes);
+            }), this.executor).handleAsync((unused, throwable) -> {
                 // runs on the storage thread: backlog/cache/retry state is safe to touch
                 if (throwable != null) {
                     if (nbt == this.cache.get(pos)) { // still the newest data for this pos
                         final int retries = this.writeRetryCounts.addTo(pos, 1) + 1;
                         if (retries <= MAX_WRITE_RETRIES) {
                             LOGGER.warn("Error writing chunk {}, re-queueing (attempt {}/{})", new ChunkPos(pos), retries, MAX_WRITE_RETRIES, throwable);
+                            this.metrics.writeRetries.incrementAndGet();
                             this.writeBacklog.put(pos, nbt);
                         } else {
                             this.writeRetryCounts.remove(pos);
+                            this.metrics.writeFailures.incrementAndGet();
                             // keep the cache entry: readers continue to see the newest
-                            // data even though the disk copy is stale
+                            // data even though the disk copy is stale. It no longer
+                            // drains, so stop charging it against the backlog budget
+                            WriteBacklogBudget.release(this.cachedBytes.remove(pos));
                             LOGGER.error("Failed to write chunk {} after {} attempts; data is retained in memory but the on-disk copy is STALE", new ChunkPos(pos), MAX_WRITE_RETRIES, throwable);
                         }
                     } else {
@@ -542,10 +1123,457 @@ public class C2MEStorageThread extends Thread {
         }
     }
 
-    private record ReadRequest(long pos, CompletableFuture<NbtCompound> future, @Nullable NbtScanner scanner) {
+    private CompletableFuture<Void> stageWrite(long pos, Either<NbtCompound, byte[]> nbt, EncodedWrite encoded) {
+        if (nbt != this.cache.get(pos)) { // only write if match to avoid overwrites
+            return CompletableFuture.completedFuture(null);
+        }
+        if (encoded.bytes == null) {
+            if (this.fingerprints.get(pos) == encoded.fingerprint) {
+                this.metrics.writesSkipped.incrementAndGet();
+                this.removeCached(pos);
+            } else {
+                // fingerprints were reset meanwhile: compress after all
+                this.writeBacklog.put(pos, nbt);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        final ByteBuffer bytes = encoded.bytes;
+        if (this.journal != null) {
+            return journalWrite(pos, bytes, encoded.fingerprint);
+        }
+        final long regionKey = ChunkPos.toLong(ChunkPos.getPackedX(pos) >> 5, ChunkPos.getPackedZ(pos) >> 5);
+        StagedBatch batch = this.stagedWrites.get(regionKey);
+        if (batch == null) {
+            batch = new StagedBatch(System.nanoTime());
+            this.stagedWrites.put(regionKey, batch);
+        }
+        final StagedWrite stagedWrite = new StagedWrite(nbt, bytes, encoded.fingerprint, new CompletableFuture<>());
+        final StagedWrite superseded = batch.writes.put(pos, stagedWrite);
+        batch.bytes += bytes.remaining();
+        this.stagedBytes += bytes.remaining();
+        if (superseded != null) {
+            batch.bytes -= superseded.bytes.remaining();
+            this.stagedBytes -= superseded.bytes.remaining();
+            superseded.future.complete(null);
+        }
+        return stagedWrite.future;
+    }
+
+    /**
+     * Commit staged writes, one batched region file update per region: payloads
+     * in sector order with a single header write, instead of a sector allocation
+     * and header write per chunk.
+     * <p>
+     * A region's writes are held back for up to {@link #BATCH_WINDOW_NANOS}, or until they
+     * reach {@link #BATCH_COMMIT_BYTES}, so that the writes of a save burst land in a few
+     * large batches. Staged chunks stay in the cache until committed, so reads of them
+     * never wait for the window.
+     *
+     * @param all whether to commit every region regardless of the window, when flushing
+     */
+    private boolean commitStagedWrites(boolean all) {
+        if (this.stagedWrites.isEmpty()) return false;
+        // under memory pressure, holding on to the buffers any longer only makes it worse
+        all |= this.stagedBytes >= MAX_STAGED_BYTES || this.writeBacklog.size() >= BACKLOG_FORCE_FLUSH_SIZE || WriteBacklogBudget.isOverSoftLimit();
+        final long now = System.nanoTime();
+        boolean committed = false;
+        for (ObjectIterator<Long2ReferenceMap.Entry<StagedBatch>> iterator = Long2ReferenceMaps.fastIterator(this.stagedWrites); iterator.hasNext(); ) {
+            final StagedBatch batch = iterator.next().getValue();
+            if (!all && batch.bytes < BATCH_COMMIT_BYTES && now - batch.since < BATCH_WINDOW_NANOS) continue;
+            iterator.remove();
+            this.stagedBytes -= batch.bytes;
+            commitRegionBatch(batch.writes);
+            committed = true;
+        }
+        return committed;
+    }
+
+    private void commitRegionBatch(Long2ReferenceLinkedOpenHashMap<StagedWrite> batch) {
+        final ObjectArrayList<ChunkPos> positions = new ObjectArrayList<>(batch.size());
+        final ObjectArrayList<ByteBuffer> buffers = new ObjectArrayList<>(batch.size());
+        final ObjectArrayList<StagedWrite> writes = new ObjectArrayList<>(batch.size());
+        long batchBytes = 0;
+        for (Long2ReferenceMap.Entry<StagedWrite> entry : Long2ReferenceMaps.fastIterable(batch)) {
+            final long pos = entry.getLongKey();
+            final StagedWrite stagedWrite = entry.getValue();
+            if (stagedWrite.nbt != this.cache.get(pos)) { // superseded while staged
+                stagedWrite.future.complete(null);
+                continue;
+            }
+            final ChunkPos pos1 = new ChunkPos(pos);
+            final ByteBuffer byteBuffer = stagedWrite.bytes;
+            if (byteBuffer.remaining() > MAX_BATCHED_CHUNK_BYTES) {
+                // needs an external .mcc file: leave that to vanilla
+                try {
+                    final long start = System.nanoTime();
+                    final ChunkStorageIoEvent event = this.metrics.beginEvent();
+                    final int bytes = byteBuffer.remaining();
+                    beforeRegionWrite(pos1);
+                    final RegionFile regionFile = this.regionFiles.get(pos1);
+                    ((IRegionFile) regionFile).invokeWriteChunk(pos1, byteBuffer);
+                    this.dirtyRegionFiles.add(regionFile);
+                    this.metrics.chunksWritten.incrementAndGet();
+                    this.metrics.bytesWritten.addAndGet(bytes);
+                    this.metrics.record(StorageMetrics.Stage.WRITE, start, event, pos, 1, bytes);
+                    rememberWrittenFingerprint(pos, stagedWrite.fingerprint);
+                    this.removeCached(pos);
+                    stagedWrite.future.complete(null);
+                } catch (Throwable t) {
+                    stagedWrite.future.completeExceptionally(t);
+                }
+                continue;
+            }
+            positions.add(pos1);
+            buffers.add(byteBuffer);
+            writes.add(stagedWrite);
+            batchBytes += byteBuffer.remaining();
+        }
+        if (positions.isEmpty()) return;
+
+        try {
+            final long start = System.nanoTime();
+            final ChunkStorageIoEvent event = this.metrics.beginEvent();
+            final ChunkPos first = positions.get(0);
+            beforeRegionWrite(first);
+            final RegionFile regionFile = this.regionFiles.get(first);
+            this.dirtyRegionFiles.add(regionFile); // a failed batch may have written payloads too
+            ((IBatchRegionFile) regionFile).writeChunksBatched(positions.toArray(ChunkPos[]::new), buffers.toArray(ByteBuffer[]::new));
+            this.metrics.chunksWritten.addAndGet(positions.size());
+            this.metrics.bytesWritten.addAndGet(batchBytes);
+            this.metrics.record(StorageMetrics.Stage.WRITE, start, event, first.toLong(), positions.size(), batchBytes);
+        } catch (Throwable t) {
+            // nothing in the batch reached the header; every chunk goes through its own retry
+            for (StagedWrite stagedWrite : writes) {
+                stagedWrite.future.completeExceptionally(t);
+            }
+            return;
+        }
+        for (int i = 0; i < writes.size(); i++) {
+            final long pos = positions.get(i).toLong();
+            rememberWrittenFingerprint(pos, writes.get(i).fingerprint);
+            this.removeCached(pos);
+            writes.get(i).future.complete(null);
+        }
+    }
+
+    private CompletableFuture<Void> journalWrite(long pos, ByteBuffer bytes, long fingerprint) {
+        try {
+            final long start = System.nanoTime();
+            final ChunkStorageIoEvent event = this.metrics.beginEvent();
+            final int length = bytes.remaining();
+            appendToJournal(pos, bytes);
+            rememberWrittenFingerprint(pos, fingerprint);
+            this.metrics.chunksWritten.incrementAndGet();
+            this.metrics.bytesWritten.addAndGet(length);
+            this.metrics.record(StorageMetrics.Stage.WRITE, start, event, pos, 1, length);
+        } catch (Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+        this.removeCached(pos);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void appendToJournal(long pos, @Nullable ByteBuffer payload) throws IOException {
+        if (this.journal.isEmpty()) this.journalFirstAppend = System.nanoTime();
+        this.journal.append(pos, payload);
+    }
+
+    /**
+     * Serve a read of a journaled chunk. The record is read here and decoded on a worker.
+     */
+    private void scheduleJournalRead(ReadRequest readRequest) {
+        final long pos = readRequest.pos;
+        final NbtScanner scanner = readRequest.scanner;
+        final ByteBuffer payload;
+        try {
+            final long readStart = System.nanoTime();
+            final ChunkStorageIoEvent readEvent = this.metrics.beginEvent();
+            payload = this.journal.read(pos);
+            this.metrics.record(StorageMetrics.Stage.READ, readStart, readEvent, pos, 1, payload != null ? payload.remaining() : 0);
+        } catch (Throwable t) {
+            readRequest.complete(null, t);
+            return;
+        }
+        if (payload == null) { // journaled delete
+            readRequest.complete(null, null);
+            return;
+        }
+        final int fingerprintGeneration = this.fingerprintGeneration;
+        CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
+            final ChunkStorageIoEvent event = this.metrics.beginEvent();
+            try {
+                final ChunkStreamVersion streamVersion = ChunkStreamVersion.get(payload.get(4));
+                if (streamVersion == null) {
+                    throw new IOException("Unknown chunk stream version %d".formatted(payload.get(4)));
+                }
+                try (DataInputStream inputStream = new DataInputStream(streamVersion.wrap(new ByteBufferInputStream(payload.slice(5, payload.getInt(0) - 1))))) {
+                    final Object value;
+                    if (scanner != null) {
+                        NbtIo.scan(inputStream, scanner);
+                        value = null;
+                    } else {
+                        final ChunkFingerprint.Input fingerprint = new ChunkFingerprint.Input(inputStream);
+                        value = readRequest.readFully(fingerprint);
+                        rememberReadFingerprint(pos, fingerprintGeneration, fingerprint);
+                    }
+                    this.metrics.chunksRead.incrementAndGet();
+                    this.metrics.record(StorageMetrics.Stage.DECOMPRESS, start, event, pos, 1, payload.remaining());
+                    return value;
+                }
+            } catch (Throwable t) {
+                SneakyThrow.sneaky(t);
+                return null; // Unreachable anyway
+            }
+        }, GlobalExecutors.executor).whenComplete(readRequest::complete);
+    }
+
+    /**
+     * Keep the journal bounded while busy: merge a region per cycle above the threshold,
+     * and everything at once at twice the threshold so that the journal can start over.
+     */
+    private boolean mergeJournalWhenFull() {
+        if (this.journal == null || this.journal.isEmpty()) return false;
+        final long size = this.journal.size();
+        if (size >= 2 * Config.writeAheadJournalMergeThresholdBytes) return mergeJournal();
+        if (size >= Config.writeAheadJournalMergeThresholdBytes) return mergeNextJournalRegion();
+        return false;
+    }
+
+    /**
+     * Merge a region of the journal once it has grown a bit or has been around for a while.
+     * Only called when there is nothing else to do.
+     */
+    private boolean mergeJournalWhenIdle() {
+        if (this.journal == null || this.journal.isEmpty()) return false;
+        if (this.journal.size() < Config.writeAheadJournalMergeThresholdBytes / 4
+                && System.nanoTime() - this.journalFirstAppend < JOURNAL_IDLE_MERGE_INTERVAL_NANOS) {
+            return false;
+        }
+        return mergeNextJournalRegion();
+    }
+
+    private boolean mergeJournal() {
+        boolean merged = false;
+        // merging removes from the live view
+        for (long regionKey : new LongArrayList(this.journal.pendingRegions())) {
+            merged |= mergeJournalRegion(this.journal.pendingIn(regionKey));
+        }
+        if (this.journal.isEmpty()) rotateJournal();
+        return merged;
+    }
+
+    private boolean mergeNextJournalRegion() {
+        final boolean merged = mergeJournalRegion(this.journal.pendingIn(this.journal.pendingRegions().iterator().nextLong()));
+        if (this.journal.isEmpty()) rotateJournal();
+        return merged;
+    }
+
+    /**
+     * Merge the journaled chunks of one region into its region file with a single batched update.
+     * On failure the chunks stay journaled, and merging them again later is harmless.
+     */
+    private boolean mergeJournalRegion(LongArrayList positions) {
+        final ChunkPos first = new ChunkPos(positions.getLong(0));
+        try {
+            final long start = System.nanoTime();
+            final ChunkStorageIoEvent event = this.metrics.beginEvent();
+            beforeRegionWrite(first);
+            final RegionFile regionFile = this.regionFiles.get(first);
+            this.dirtyRegionFiles.add(regionFile);
+            final ObjectArrayList<ChunkPos> batched = new ObjectArrayList<>(positions.size());
+            final ObjectArrayList<ByteBuffer> buffers = new ObjectArrayList<>(positions.size());
+            long bytes = 0;
+            for (int i = 0; i < positions.size(); i++) {
+                final long pos = positions.getLong(i);
+                final ChunkPos pos1 = new ChunkPos(pos);
+                final ByteBuffer payload = this.journal.read(pos);
+                if (payload == null) {
+                    regionFile.delete(pos1);
+                    this.existenceIndex.onDelete(pos);
+                    continue;
+                }
+                bytes += payload.remaining();
+                if (payload.remaining() > MAX_BATCHED_CHUNK_BYTES) {
+                    // needs an external .mcc file: leave that to vanilla
+                    ((IRegionFile) regionFile).invokeWriteChunk(pos1, payload);
+                } else {
+                    batched.add(pos1);
+                    buffers.add(payload);
+                }
+            }
+            if (!batched.isEmpty()) {
+                ((IBatchRegionFile) regionFile).writeChunksBatched(batched.toArray(ChunkPos[]::new), buffers.toArray(ByteBuffer[]::new));
+            }
+            // chunks were counted when journaled
+            this.metrics.record(StorageMetrics.Stage.WRITE, start, event, first.toLong(), positions.size(), bytes);
+        } catch (Throwable t) {
+            LOGGER.error("Error merging chunk journal into region file of chunk {}, chunks stay journaled", first, t);
+            return false;
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            this.journal.remove(positions.getLong(i));
+        }
+        return true;
     }
 
-    private record WriteRequest(long pos, Either<NbtCompound, byte[]> nbt) {
+    /**
+     * Start a new journal generation once everything is merged. The previous one is deleted
+     * when the region files it was merged into are durable.
+     */
+    private void rotateJournal() {
+        if (this.journal.size() == 0) return;
+        final Path previous;
+        try {
+            previous = this.journal.rotate();
+        } catch (Throwable t) {
+            LOGGER.error("Error rotating chunk journal", t);
+            return;
+        }
+        final ObjectArrayList<RegionFile> regionFiles = new ObjectArrayList<>(this.dirtyRegionFiles);
+        this.dirtyRegionFiles.clear();
+        final RetiredJournal retired = new RetiredJournal(previous, GroupCommitSync.sync(regionFiles));
+        this.retiredJournals.add(retired);
+        retired.synced.whenCompleteAsync((unused, throwable) -> {
+            if (throwable != null) {
+                // the generation is kept until the final sync on close
+                LOGGER.error("Error syncing storage", throwable);
+                this.dirtyRegionFiles.addAll(regionFiles);
+                return;
+            }
+            retired.durable = true;
+            deleteRetiredJournals();
+        }, this.executor);
+    }
+
+    private void deleteRetiredJournals() {
+        while (!this.retiredJournals.isEmpty() && this.retiredJournals.get(0).durable) {
+            try {
+                Files.deleteIfExists(this.retiredJournals.get(0).path);
+            } catch (IOException e) {
+                LOGGER.error("Error deleting chunk journal", e);
+                return;
+            }
+            this.retiredJournals.remove(0);
+        }
+    }
+
+    /**
+     * Merge the whole journal on close, and delete it if everything made it into durable region files.
+     */
+    private void closeJournal() {
+        mergeJournal();
+        boolean durable = this.journal.isEmpty();
+        // the completions of rotation syncs are tasks of this thread, which no longer runs them:
+        // wait for the syncs here, as they hold the only durable copy of what was merged
+        for (RetiredJournal retired : this.retiredJournals) {
+            try {
+                retired.synced.join();
+            } catch (Throwable t) {
+                LOGGER.error("Error syncing storage", t);
+                durable = false;
+            }
+        }
+        try {
+            GroupCommitSync.sync(new ObjectArrayList<>(this.dirtyRegionFiles)).join();
+            this.dirtyRegionFiles.clear();
+        } catch (Throwable t) {
+            LOGGER.error("Error syncing storage", t);
+            durable = false;
+        }
+        try {
+            if (durable) {
+                for (RetiredJournal retired : this.retiredJournals) retired.durable = true;
+                deleteRetiredJournals();
+                if (this.retiredJournals.isEmpty()) {
+                    this.journal.closeAndDelete();
+                    return;
+                }
+            }
+            this.journal.close();
+            LOGGER.error("Chunk journal of {} is kept and will be replayed on the next start", this.metrics.getName());
+        } catch (Throwable t) {
+            LOGGER.error("Error closing chunk journal", t);
+        }
+    }
+
+    private void rememberWrittenFingerprint(long pos, long fingerprint) {
+        if (this.fingerprints.size() >= MAX_FINGERPRINTS && !this.fingerprints.containsKey(pos)) {
+            this.fingerprints.clear();
+            this.fingerprintGeneration++;
+        }
+        this.fingerprints.put(pos, fingerprint);
+    }
+
+    /**
+     * Any thread, after a full read of the chunk from disk or the journal.
+     */
+    private void rememberReadFingerprint(long pos, int generation, ChunkFingerprint.Input input) {
+        final long fingerprint = input.finish();
+        this.executor.execute(() -> {
+            if (generation != this.fingerprintGeneration || this.fingerprints.size() >= MAX_FINGERPRINTS) return;
+            this.fingerprints.putIfAbsent(pos, fingerprint);
+        });
+    }
+
+    private void removeCached(long pos) {
+        this.cache.remove(pos);
+        WriteBacklogBudget.release(this.cachedBytes.remove(pos));
+    }
+
+    /**
+     * @param raw whether the uncompressed payload is requested instead of the parsed tree
+     */
+    private record ReadRequest(long pos, CompletableFuture<?> future, @Nullable NbtScanner scanner, boolean raw, int priority) {
+
+        @SuppressWarnings("unchecked")
+        private void complete(@Nullable Object value, @Nullable Throwable throwable) {
+            if (throwable != null) this.future.completeExceptionally(throwable);
+            else ((CompletableFuture<Object>) this.future).complete(value);
+        }
+
+        private Object readFully(ChunkFingerprint.Input input) throws IOException {
+            return this.raw ? input.readAllBytes() : NbtIo.read(new DataInputStream(input));
+        }
+
+    }
+
+    private record PriorityHint(long pos, int priority, boolean sticky) {
+    }
+
+    private record WriteRequest(long pos, Either<NbtCompound, byte[]> nbt, long bytes) {
+    }
+
+    private static class RetiredJournal {
+        private final Path path;
+        // sync of the region files it was merged into
+        private final CompletableFuture<Void> synced;
+        private boolean durable;
+
+        private RetiredJournal(Path path, CompletableFuture<Void> synced) {
+            this.path = path;
+            this.synced = synced;
+        }
+    }
+
+    /**
+     * @param bytes the compressed chunk buffer, or null if the payload is unchanged
+     */
+    private record EncodedWrite(@Nullable ByteBuffer bytes, long fingerprint) {
+    }
+
+    private record StagedWrite(Either<NbtCompound, byte[]> nbt, ByteBuffer bytes, long fingerprint, CompletableFuture<Void> future) {
+    }
+
+    private static class StagedBatch {
+        private final Long2ReferenceLinkedOpenHashMap<StagedWrite> writes = new Long2ReferenceLinkedOpenHashMap<>();
+        // when the first write was staged
+        private final long since;
+        private long bytes;
+
+        private StagedBatch(long since) {
+            this.since = since;
+        }
     }
 
 }
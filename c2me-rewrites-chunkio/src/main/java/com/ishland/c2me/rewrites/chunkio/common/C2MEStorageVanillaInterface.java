@@ -2,6 +2,8 @@ package com.ishland.c2me.rewrites.chunkio.common;
 
 import com.google.common.base.Preconditions;
 import com.ishland.c2me.base.common.theinterface.IDirectStorage;
+import com.ishland.c2me.base.common.theinterface.IPrioritizedStorage;
+import it.unimi.dsi.fastutil.HashCommon;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.scanner.NbtScanner;
 import net.minecraft.util.math.ChunkPos;
@@ -12,50 +14,92 @@ import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
-public class C2MEStorageVanillaInterface extends StorageIoWorker implements IDirectStorage {
+public class C2MEStorageVanillaInterface extends StorageIoWorker implements IDirectStorage, IPrioritizedStorage {
 
-    private final C2MEStorageThread backend;
+    // each lane owns a disjoint set of region files: a chunk is always routed to the
+    // lane of its region, so per-chunk ordering is preserved within that lane
+    private final C2MEStorageThread[] lanes;
 
     public C2MEStorageVanillaInterface(Path directory, boolean dsync, String name) {
         super(null, dsync, name);
-        this.backend = new C2MEStorageThread(directory, dsync, name);
+        // journals left behind by a crash, possibly with another lane count or with the
+        // journal disabled since, must reach the region files before anything is read
+        final long journalGeneration = ChunkJournal.replay(directory, com.ishland.c2me.opts.chunkio.common.Config.syncDiskWrites);
+        this.lanes = new C2MEStorageThread[Config.storageLanes];
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i] = new C2MEStorageThread(directory, dsync, name, i, journalGeneration);
+        }
+    }
+
+    private C2MEStorageThread lane(ChunkPos pos) {
+        if (this.lanes.length == 1) return this.lanes[0];
+        final long regionKey = ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ());
+        return this.lanes[(int) Long.remainderUnsigned(HashCommon.mix(regionKey), this.lanes.length)];
     }
 
     @Override
     public CompletableFuture<Void> setResult(ChunkPos pos, @Nullable NbtCompound nbt) {
-        this.backend.setChunkData(pos.toLong(), nbt);
+        // vanilla callers treat this future as write completion, not as backpressure
+        this.lane(pos).setChunkData(pos.toLong(), nbt);
         return CompletableFuture.completedFuture(null);
     }
 
     @Override
     public CompletableFuture<Optional<NbtCompound>> readChunkData(ChunkPos pos) {
-        return this.backend.getChunkData(pos.toLong(), null).thenApply(Optional::ofNullable);
+        return this.lane(pos).getChunkData(pos.toLong(), null).thenApply(Optional::ofNullable);
     }
 
     @Override
     public CompletableFuture<Void> completeAll(boolean sync) {
-        return this.backend.flush(true);
+        if (this.lanes.length == 1) return this.lanes[0].flush(true);
+        final CompletableFuture<?>[] futures = new CompletableFuture[this.lanes.length];
+        for (int i = 0; i < this.lanes.length; i++) {
+            futures[i] = this.lanes[i].flush(true);
+        }
+        return CompletableFuture.allOf(futures);
     }
 
     @Override
     public CompletableFuture<Void> scanChunk(ChunkPos pos, NbtScanner scanner) {
         Preconditions.checkNotNull(scanner, "scanner");
-        return this.backend.getChunkData(pos.toLong(), scanner).thenApply(unused -> null);
+        return this.lane(pos).getChunkData(pos.toLong(), scanner).thenApply(unused -> null);
     }
 
     @Override
     public void close() {
         // vanilla StorageIoWorker.close() blocks until durable; match that contract.
-        // The backend is a daemon thread - without joining here, JVM exit during
-        // server shutdown can kill it mid-flush after the world reported saved.
-        this.backend.close().join();
+        // The backends are daemon threads - without joining here, JVM exit during
+        // server shutdown can kill them mid-flush after the world reported saved.
+        // Lanes share nothing, so let them close in parallel before joining.
+        final CompletableFuture<?>[] futures = new CompletableFuture[this.lanes.length];
+        for (int i = 0; i < this.lanes.length; i++) {
+            futures[i] = this.lanes[i].close();
+        }
+        CompletableFuture.allOf(futures).join();
     }
 
+    @Override
+    public CompletableFuture<Void> setRawChunkData(ChunkPos pos, byte[] data) {
+        return this.lane(pos).setChunkData(pos.toLong(), data);
+    }
 
+    @Override
+    public boolean supportsRawChunkData() {
+        return true;
+    }
 
     @Override
-    public CompletableFuture<Void> setRawChunkData(ChunkPos pos, byte[] data) {
-        this.backend.setChunkData(pos.toLong(), data);
-        return CompletableFuture.completedFuture(null);
+    public CompletableFuture<Optional<byte[]>> getRawChunkData(ChunkPos pos) {
+        return this.lane(pos).getChunkBytes(pos.toLong(), IPrioritizedStorage.DEFAULT_PRIORITY).thenApply(Optional::ofNullable);
+    }
+
+    @Override
+    public void prioritizeRead(ChunkPos pos, int priority, boolean sticky) {
+        this.lane(pos).prioritizeRead(pos.toLong(), priority, sticky);
+    }
+
+    @Override
+    public CompletableFuture<Void> getWriteBackpressure() {
+        return WriteBacklogBudget.awaitCapacity();
     }
 }
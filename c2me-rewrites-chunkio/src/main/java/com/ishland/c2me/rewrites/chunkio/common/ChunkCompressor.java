@@ -0,0 +1,180 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import net.minecraft.world.storage.ChunkStreamVersion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses uncompressed chunk payloads into the chunk buffers region files store:
+ * length, stream version, then the compressed data.
+ * <p>
+ * Zlib, gzip and uncompressed chunks are produced by a {@link Deflater} reading the payload
+ * in place, which may be the native memory of an NbtWriter, and writing into a pooled direct
+ * buffer that region file and journal writes consume as is. Other stream versions go through
+ * their wrapping stream into the same kind of buffer.
+ */
+final class ChunkCompressor {
+
+    private static final int HEADER_BYTES = 5;
+    private static final int MIN_CAPACITY = 16 * 1024;
+    // anything larger is rare enough to be left to the GC
+    private static final int MAX_POOLED_CAPACITY = 2 * 1024 * 1024;
+    private static final long MAX_POOLED_BYTES = 32L * 1024 * 1024;
+    private static final int STREAM_COPY_BYTES = 8 * 1024;
+
+    // same header as GZIPOutputStream
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_BYTES = 8;
+
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentLinkedQueue<ByteBuffer>[] pools = new ConcurrentLinkedQueue[sizeClass(MAX_POOLED_CAPACITY) + 1];
+    private static final AtomicLong pooledBytes = new AtomicLong();
+
+    private static final ThreadLocal<Deflater> zlibDeflater = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Deflater> gzipDeflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    static {
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    private ChunkCompressor() {
+    }
+
+    /**
+     * @param payload the uncompressed payload, left untouched
+     * @return the chunk buffer, to be handed back with {@link #release(ByteBuffer)} once written
+     */
+    static ByteBuffer compress(ChunkStreamVersion streamVersion, ByteBuffer payload) throws IOException {
+        final boolean uncompressed = streamVersion == ChunkStreamVersion.UNCOMPRESSED;
+        // chunk data usually deflates to a quarter or less
+        final Sink sink = new Sink(acquire(HEADER_BYTES + (uncompressed ? payload.remaining() : payload.remaining() / 4)));
+        try {
+            sink.buffer.position(HEADER_BYTES);
+            if (streamVersion == ChunkStreamVersion.DEFLATE) {
+                deflate(zlibDeflater.get(), payload, sink);
+            } else if (streamVersion == ChunkStreamVersion.GZIP) {
+                sink.write(GZIP_HEADER);
+                deflate(gzipDeflater.get(), payload, sink);
+                final CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                sink.ensure(GZIP_TRAILER_BYTES);
+                sink.buffer.putInt(Integer.reverseBytes((int) crc.getValue()));
+                sink.buffer.putInt(Integer.reverseBytes(payload.remaining()));
+            } else if (uncompressed) {
+                sink.ensure(payload.remaining());
+                sink.buffer.put(payload.duplicate());
+            } else {
+                try (OutputStream stream = streamVersion.wrap(sink)) {
+                    write(stream, payload);
+                }
+            }
+        } catch (Throwable t) {
+            release(sink.buffer);
+            throw t;
+        }
+        final ByteBuffer buffer = sink.buffer.flip();
+        // TODO [VanillaCopy] RegionFile.ChunkBuffer
+        buffer.putInt(0, buffer.remaining() - HEADER_BYTES + 1);
+        buffer.put(4, (byte) streamVersion.getId());
+        return buffer;
+    }
+
+    static void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (capacity > MAX_POOLED_CAPACITY || Integer.bitCount(capacity) != 1) return;
+        if (pooledBytes.addAndGet(capacity) > MAX_POOLED_BYTES) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        pools[sizeClass(capacity)].add(buffer.clear());
+    }
+
+    private static void deflate(Deflater deflater, ByteBuffer payload, Sink sink) {
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+        try {
+            while (!deflater.finished()) {
+                sink.ensure(1);
+                deflater.deflate(sink.buffer);
+            }
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void write(OutputStream stream, ByteBuffer payload) throws IOException {
+        if (payload.hasArray()) {
+            stream.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            return;
+        }
+        final ByteBuffer input = payload.duplicate();
+        final byte[] chunk = new byte[Math.min(STREAM_COPY_BYTES, input.remaining())];
+        while (input.hasRemaining()) {
+            final int length = Math.min(chunk.length, input.remaining());
+            input.get(chunk, 0, length);
+            stream.write(chunk, 0, length);
+        }
+    }
+
+    private static ByteBuffer acquire(int minCapacity) {
+        final int capacity = capacityClass(minCapacity);
+        if (capacity <= MAX_POOLED_CAPACITY) {
+            final ByteBuffer buffer = pools[sizeClass(capacity)].poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-capacity);
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private static int capacityClass(int minCapacity) {
+        if (minCapacity <= MIN_CAPACITY) return MIN_CAPACITY;
+        if (minCapacity > 1 << 30) return minCapacity;
+        return Integer.highestOneBit(minCapacity - 1) << 1;
+    }
+
+    private static int sizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    }
+
+    /**
+     * Growable output over pooled buffers.
+     */
+    private static class Sink extends OutputStream {
+        private ByteBuffer buffer;
+
+        private Sink(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void ensure(int bytes) {
+            if (this.buffer.remaining() >= bytes) return;
+            final ByteBuffer grown = acquire(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes));
+            grown.put(this.buffer.flip());
+            release(this.buffer);
+            this.buffer = grown;
+        }
+
+        @Override
+        public void write(int b) {
+            this.ensure(1);
+            this.buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.ensure(len);
+            this.buffer.put(b, off, len);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Which chunks of the regions owned by one storage thread may exist, one bit per chunk.
+ * <p>
+ * Bits are set before a write is submitted and loaded lazily from region headers on the
+ * storage thread, so a clear bit in a loaded region means the chunk is neither on disk nor
+ * on its way there, and reads of it can complete on the caller's thread. Bits are only
+ * cleared after a delete reached the region file, and set again if a write of the region
+ * was submitted concurrently.
+ * <p>
+ * Regions are forgotten again, least recently used first, once there are more than
+ * {@link #MAX_REGIONS}, so that exploring doesn't grow the index without bound. A forgotten
+ * region is loaded from its header again, so only regions whose chunks are all in the
+ * header can be forgotten.
+ */
+class ChunkExistenceIndex {
+
+    private static final int HEADER_ENTRIES = 1024;
+    private static final int MAX_REGIONS = 1024;
+    // trimming goes below the limit so that it doesn't happen on every new region
+    private static final int TRIMMED_REGIONS = MAX_REGIONS * 3 / 4;
+
+    private final Path directory;
+    private final ConcurrentHashMap<Long, Region> regions = new ConcurrentHashMap<>();
+
+    ChunkExistenceIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Any thread.
+     *
+     * @return whether the chunk is known to be absent from both disk and pending writes
+     */
+    boolean isKnownMissing(long pos) {
+        final Region region = this.regions.get(regionKey(pos));
+        if (region == null) return false;
+        region.lastUse = System.nanoTime();
+        return region.loaded && !region.get(index(pos));
+    }
+
+    /**
+     * Any thread, before the write is submitted to the storage thread.
+     */
+    void beforeWrite(long pos, boolean delete) {
+        // counted within compute so that trim() can't forget the region in between
+        final Region region = this.regions.compute(regionKey(pos), (key, existing) -> {
+            final Region counted = existing != null ? existing : new Region();
+            counted.pendingWrites.incrementAndGet();
+            return counted;
+        });
+        if (!delete) region.set(index(pos));
+    }
+
+    /**
+     * Storage thread, once the write is in the cache and the cache answers reads for it.
+     */
+    void onWriteIntake(long pos) {
+        this.region(pos).pendingWrites.decrementAndGet();
+    }
+
+    /**
+     * Storage thread, after the chunk has been deleted from its region file.
+     */
+    void onDelete(long pos) {
+        final Region region = this.region(pos);
+        final int index = index(pos);
+        region.clear(index);
+        // writers bump pendingWrites before setting their bit, so either we see it here
+        // or their bit lands after our clear
+        if (region.pendingWrites.get() != 0) region.set(index);
+    }
+
+    /**
+     * Storage thread. Load the header of the region containing the chunk if needed.
+     *
+     * @return whether the chunk is known to be missing
+     */
+    boolean load(long pos) {
+        final Region region = this.region(pos);
+        if (!region.loaded) {
+            final int regionX = ChunkPos.getPackedX(pos) >> 5;
+            final int regionZ = ChunkPos.getPackedZ(pos) >> 5;
+            final Path file = this.directory.resolve("r." + regionX + "." + regionZ + ".mca");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_ENTRIES * 4);
+                while (header.hasRemaining() && channel.read(header) >= 0) ;
+                header.flip();
+                for (int i = 0; i < HEADER_ENTRIES && i * 4 + 4 <= header.limit(); i++) {
+                    if (header.getInt(i * 4) != 0) region.set(i);
+                }
+            } catch (NoSuchFileException e) {
+                // nothing on disk yet
+            } catch (IOException e) {
+                // unreadable header: leave it to the region file
+                return false;
+            }
+            region.loaded = true;
+        }
+        return !region.get(index(pos));
+    }
+
+    boolean needsTrim() {
+        return this.regions.size() > MAX_REGIONS;
+    }
+
+    /**
+     * Storage thread. Forget the least recently used regions beyond {@link #TRIMMED_REGIONS}.
+     *
+     * @param unwritten regions with chunks that may not be in their region file header yet
+     */
+    void trim(LongSet unwritten) {
+        final ObjectArrayList<TrimCandidate> candidates = new ObjectArrayList<>();
+        for (Map.Entry<Long, Region> entry : this.regions.entrySet()) {
+            final long regionKey = entry.getKey();
+            if (!unwritten.contains(regionKey)) candidates.add(new TrimCandidate(regionKey, entry.getValue().lastUse));
+        }
+        candidates.sort(Comparator.comparingLong(TrimCandidate::lastUse));
+        for (TrimCandidate candidate : candidates) {
+            if (this.regions.size() <= TRIMMED_REGIONS) break;
+            this.regions.computeIfPresent(candidate.regionKey, (key, region) -> region.pendingWrites.get() == 0 ? null : region);
+        }
+    }
+
+    private Region region(long pos) {
+        final Region region = this.regions.computeIfAbsent(regionKey(pos), unused -> new Region());
+        region.lastUse = System.nanoTime();
+        return region;
+    }
+
+    private static long regionKey(long pos) {
+        return ChunkPos.toLong(ChunkPos.getPackedX(pos) >> 5, ChunkPos.getPackedZ(pos) >> 5);
+    }
+
+    private static int index(long pos) {
+        return (ChunkPos.getPackedX(pos) & 31) | ((ChunkPos.getPackedZ(pos) & 31) << 5);
+    }
+
+    private static class Region {
+
+        private final AtomicLongArray bits = new AtomicLongArray(HEADER_ENTRIES / 64);
+        private final AtomicInteger pendingWrites = new AtomicInteger();
+        private volatile boolean loaded;
+        private volatile long lastUse = System.nanoTime();
+
+        private boolean get(int index) {
+            return (this.bits.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        private void set(int index) {
+            final long mask = 1L << index;
+            this.bits.getAndAccumulate(index >>> 6, mask, (value, bit) -> value | bit);
+        }
+
+        private void clear(int index) {
+            final long mask = ~(1L << index);
+            this.bits.getAndAccumulate(index >>> 6, mask, (value, bits) -> value & bits);
+        }
+
+    }
+
+    // lastUse is copied so that it doesn't change while sorting
+    private record TrimCandidate(long regionKey, long lastUse) {
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64-bit fingerprint of uncompressed chunk payloads, word-at-a-time in the spirit of xxHash64.
+ * Not cryptographic: it only has to tell versions of the same chunk apart.
+ * {@link #NONE} is never produced and stands for an unknown or absent payload.
+ */
+class ChunkFingerprint {
+
+    static final long NONE = 0L;
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+
+    private long hash = PRIME_3;
+    private long length = 0;
+    private long word = 0;
+    private int wordBytes = 0;
+
+    static long of(byte[] bytes) {
+        final ChunkFingerprint fingerprint = new ChunkFingerprint();
+        fingerprint.update(bytes, 0, bytes.length);
+        return fingerprint.finish();
+    }
+
+    static long of(ByteBuffer bytes) {
+        final ChunkFingerprint fingerprint = new ChunkFingerprint();
+        fingerprint.update(bytes);
+        return fingerprint.finish();
+    }
+
+    void update(int b) {
+        this.word |= (b & 0xFFL) << (this.wordBytes << 3);
+        this.length++;
+        if (++this.wordBytes == 8) {
+            this.mix(this.word);
+            this.word = 0;
+            this.wordBytes = 0;
+        }
+    }
+
+    void update(byte[] bytes, int off, int len) {
+        int i = off;
+        final int end = off + len;
+        while (i < end && this.wordBytes != 0) {
+            this.update(bytes[i++]);
+        }
+        while (end - i >= 8) {
+            this.mix((bytes[i] & 0xFFL)
+                    | (bytes[i + 1] & 0xFFL) << 8
+                    | (bytes[i + 2] & 0xFFL) << 16
+                    | (bytes[i + 3] & 0xFFL) << 24
+                    | (bytes[i + 4] & 0xFFL) << 32
+                    | (bytes[i + 5] & 0xFFL) << 40
+                    | (bytes[i + 6] & 0xFFL) << 48
+                    | (bytes[i + 7] & 0xFFL) << 56);
+            this.length += 8;
+            i += 8;
+        }
+        while (i < end) {
+            this.update(bytes[i++]);
+        }
+    }
+
+    /**
+     * Same as {@link #update(byte[], int, int)} over the remaining bytes, without moving the position.
+     */
+    void update(ByteBuffer bytes) {
+        final ByteBuffer buffer = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int i = buffer.position();
+        final int end = buffer.limit();
+        while (i < end && this.wordBytes != 0) {
+            this.update(buffer.get(i++));
+        }
+        while (end - i >= 8) {
+            this.mix(buffer.getLong(i));
+            this.length += 8;
+            i += 8;
+        }
+        while (i < end) {
+            this.update(buffer.get(i++));
+        }
+    }
+
+    private void mix(long word) {
+        this.hash ^= Long.rotateLeft(word * PRIME_2, 31) * PRIME_1;
+        this.hash = Long.rotateLeft(this.hash, 27) * PRIME_1 + PRIME_3;
+    }
+
+    long finish() {
+        long h = this.hash ^ this.length;
+        if (this.wordBytes != 0) h ^= Long.rotateLeft(this.word * PRIME_1, 11) * PRIME_2;
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+        return h == NONE ? 1L : h;
+    }
+
+    /**
+     * Fingerprints everything read through it.
+     */
+    static class Input extends FilterInputStream {
+
+        private final ChunkFingerprint fingerprint = new ChunkFingerprint();
+
+        Input(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) this.fingerprint.update(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) this.fingerprint.update(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes would be missing from the fingerprint
+            long skipped = 0;
+            while (skipped < n && this.read() >= 0) skipped++;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long finish() {
+            return this.fingerprint.finish();
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import com.ishland.c2me.base.mixin.access.IRegionFile;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceMaps;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.util.PathUtil;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionFile;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of chunk writes of one storage thread, see {@link Config#writeAheadJournal}.
+ * <p>
+ * Records are compressed chunk payloads laid out like region file chunk buffers
+ * (length, stream version, data), or deletes. The storage thread appends to the
+ * current generation and merges entries into region files later; once every entry
+ * is merged and the region files are durable, the generation is deleted.
+ * Storage-thread confined apart from {@link #sync()}.
+ * <p>
+ * Record: magic, chunk pos, payload length (-1 for deletes), payload, CRC32C of all before.
+ */
+class ChunkJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Storage");
+
+    private static final int MAGIC = 0xC2DE4A31;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+    private static final int RECORD_TRAILER_SIZE = 4;
+    private static final int DELETE = -1;
+    private static final String PREFIX = "c2me-journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int lane;
+    private long generation;
+    // replaced on rotation; read by sync() from the sync pool
+    private volatile FileChannel channel;
+    private long size = 0;
+    // latest record per chunk: payload offset and length, DELETE for deletes
+    private final Long2LongOpenHashMap offsets = new Long2LongOpenHashMap();
+    private final Long2IntOpenHashMap lengths = new Long2IntOpenHashMap();
+    // chunks with unmerged records by region, in order of the region's first record
+    private final Long2ReferenceLinkedOpenHashMap<LongOpenHashSet> pendingByRegion = new Long2ReferenceLinkedOpenHashMap<>();
+
+    /**
+     * @param generation the first generation, see {@link #replay}
+     */
+    ChunkJournal(Path directory, int lane, long generation) throws IOException {
+        this.directory = directory;
+        this.lane = lane;
+        this.generation = generation;
+        PathUtil.createDirectories(directory);
+        this.channel = this.open(this.generation);
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        return FileChannel.open(this.path(generation), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path path(long generation) {
+        return this.directory.resolve(PREFIX + this.lane + "-" + generation + SUFFIX);
+    }
+
+    /**
+     * @param payload the chunk buffer with its length field set, or null to delete the chunk
+     */
+    void append(long pos, @Nullable ByteBuffer payload) throws IOException {
+        final int length = payload != null ? payload.remaining() : DELETE;
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(MAGIC).putLong(pos).putInt(length).flip();
+        final CRC32C crc = new CRC32C();
+        crc.update(header.duplicate());
+        if (payload != null) crc.update(payload.duplicate());
+        final ByteBuffer trailer = ByteBuffer.allocate(RECORD_TRAILER_SIZE);
+        trailer.putInt((int) crc.getValue()).flip();
+
+        final ByteBuffer[] buffers = payload != null ? new ByteBuffer[]{header, payload.duplicate(), trailer} : new ByteBuffer[]{header, trailer};
+        final long recordSize = RECORD_HEADER_SIZE + Math.max(length, 0) + RECORD_TRAILER_SIZE;
+        this.channel.position(this.size);
+        long written = 0;
+        while (written < recordSize) {
+            written += this.channel.write(buffers);
+        }
+        if (!this.lengths.containsKey(pos)) {
+            this.pendingByRegion.computeIfAbsent(regionKey(pos), unused -> new LongOpenHashSet()).add(pos);
+        }
+        this.offsets.put(pos, this.size + RECORD_HEADER_SIZE);
+        this.lengths.put(pos, length);
+        this.size += recordSize;
+    }
+
+    boolean contains(long pos) {
+        return this.lengths.containsKey(pos);
+    }
+
+    /**
+     * @return the payload of the latest record of the chunk, or null if it is a delete
+     */
+    @Nullable
+    ByteBuffer read(long pos) throws IOException {
+        final int length = this.lengths.get(pos);
+        if (length == DELETE) return null;
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final long offset = this.offsets.get(pos);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0) throw new EOFException("Journal truncated");
+        }
+        return buffer.flip();
+    }
+
+    void remove(long pos) {
+        if (!this.lengths.containsKey(pos)) return;
+        this.offsets.remove(pos);
+        this.lengths.remove(pos);
+        final long regionKey = regionKey(pos);
+        final LongOpenHashSet positions = this.pendingByRegion.get(regionKey);
+        positions.remove(pos);
+        if (positions.isEmpty()) this.pendingByRegion.remove(regionKey);
+    }
+
+    boolean isEmpty() {
+        return this.lengths.isEmpty();
+    }
+
+    long size() {
+        return this.size;
+    }
+
+    /**
+     * @return regions with unmerged records, the one with the oldest first; a live view
+     */
+    LongSet pendingRegions() {
+        return this.pendingByRegion.keySet();
+    }
+
+    /**
+     * @return the chunks of the region with unmerged records
+     */
+    LongArrayList pendingIn(long regionKey) {
+        final LongOpenHashSet positions = this.pendingByRegion.get(regionKey);
+        return positions != null ? new LongArrayList(positions) : new LongArrayList();
+    }
+
+    private static long regionKey(long pos) {
+        return ChunkPos.toLong(ChunkPos.getPackedX(pos) >> 5, ChunkPos.getPackedZ(pos) >> 5);
+    }
+
+    /**
+     * Start a new generation. Only valid when every entry is merged.
+     *
+     * @return the previous generation, to be deleted once the region files it was merged into are durable
+     */
+    Path rotate() throws IOException {
+        if (!this.isEmpty()) throw new IllegalStateException("Journal has unmerged entries");
+        final Path previous = this.path(this.generation);
+        // a concurrent sync() may still be aimed at this generation
+        this.channel.force(false);
+        this.channel.close();
+        this.generation++;
+        this.channel = this.open(this.generation);
+        this.size = 0;
+        return previous;
+    }
+
+    void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    /**
+     * Close the journal, keeping it for replay on the next start.
+     */
+    void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Close and delete the journal. Only valid when every entry is merged into durable region files.
+     */
+    void closeAndDelete() throws IOException {
+        this.channel.close();
+        Files.deleteIfExists(this.path(this.generation));
+    }
+
+    /**
+     * Merge journals left behind by an unclean shutdown into the region files of a directory.
+     * Must run before any storage thread of the directory starts.
+     *
+     * @return the first generation for new journals of the directory. Journals that could not
+     *         be replayed are kept, and new generations must sort after them
+     */
+    static long replay(Path directory, boolean dsync) {
+        if (!Files.isDirectory(directory)) return 0;
+        final ObjectArrayList<Path> journals = new ObjectArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(journals::add);
+        } catch (IOException e) {
+            // nothing can be replayed safely; new journals must not clobber old ones either
+            throw new UncheckedIOException("Failed to list chunk journals in %s".formatted(directory), e);
+        }
+        if (journals.isEmpty()) return 0;
+        // a chunk only ever goes to one lane during a run, and generations are numbered
+        // per directory, so ordering by generation is enough
+        journals.sort(Comparator.comparingLong(ChunkJournal::generationOf));
+        final long nextGeneration = generationOf(journals.get(journals.size() - 1)) + 1;
+
+        final Long2ReferenceLinkedOpenHashMap<byte[]> latest = new Long2ReferenceLinkedOpenHashMap<>();
+        for (Path journal : journals) {
+            readRecords(journal, latest);
+        }
+        LOGGER.info("Replaying {} chunk(s) from {} journal(s) in {}", latest.size(), journals.size(), directory);
+
+        final Long2ReferenceOpenHashMap<Long2ReferenceLinkedOpenHashMap<byte[]>> byRegion = new Long2ReferenceOpenHashMap<>();
+        for (Long2ReferenceMap.Entry<byte[]> entry : Long2ReferenceMaps.fastIterable(latest)) {
+            final long pos = entry.getLongKey();
+            final long regionKey = ChunkPos.toLong(ChunkPos.getPackedX(pos) >> 5, ChunkPos.getPackedZ(pos) >> 5);
+            byRegion.computeIfAbsent(regionKey, unused -> new Long2ReferenceLinkedOpenHashMap<>()).put(pos, entry.getValue());
+        }
+        boolean failed = false;
+        for (Long2ReferenceMap.Entry<Long2ReferenceLinkedOpenHashMap<byte[]>> entry : Long2ReferenceMaps.fastIterable(byRegion)) {
+            final long regionKey = entry.getLongKey();
+            final Path path = directory.resolve("r." + ChunkPos.getPackedX(regionKey) + "." + ChunkPos.getPackedZ(regionKey) + ".mca");
+            try (RegionFile regionFile = new RegionFile(path, directory, dsync)) {
+                final ObjectArrayList<ChunkPos> positions = new ObjectArrayList<>();
+                final ObjectArrayList<ByteBuffer> buffers = new ObjectArrayList<>();
+                for (Long2ReferenceMap.Entry<byte[]> chunk : Long2ReferenceMaps.fastIterable(entry.getValue())) {
+                    final ChunkPos pos = new ChunkPos(chunk.getLongKey());
+                    final byte[] payload = chunk.getValue();
+                    if (payload == null) {
+                        regionFile.delete(pos);
+                    } else if (payload.length > C2MEStorageThread.MAX_BATCHED_CHUNK_BYTES) {
+                        ((IRegionFile) regionFile).invokeWriteChunk(pos, ByteBuffer.wrap(payload));
+                    } else {
+                        positions.add(pos);
+                        buffers.add(ByteBuffer.wrap(payload));
+                    }
+                }
+                if (!positions.isEmpty()) {
+                    ((IBatchRegionFile) regionFile).writeChunksBatched(positions.toArray(ChunkPos[]::new), buffers.toArray(ByteBuffer[]::new));
+                }
+                regionFile.sync();
+            } catch (Throwable t) {
+                failed = true;
+                LOGGER.error("Failed to replay chunk journal into {}", path, t);
+            }
+        }
+        if (failed) {
+            // keep the journals around so that nothing is lost; they are replayed again next time
+            LOGGER.error("Chunk journals in {} were not fully replayed and are kept for the next start", directory);
+            return nextGeneration;
+        }
+        for (Path journal : journals) {
+            try {
+                Files.deleteIfExists(journal);
+            } catch (IOException e) {
+                LOGGER.error("Failed to delete replayed chunk journal {}", journal, e);
+            }
+        }
+        return nextGeneration;
+    }
+
+    private static void readRecords(Path journal, Long2ReferenceLinkedOpenHashMap<byte[]> latest) {
+        int records = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(FileChannel.open(journal, StandardOpenOption.READ)), 64 * 1024))) {
+            while (true) {
+                final int magic;
+                try {
+                    magic = input.readInt();
+                } catch (EOFException e) {
+                    break; // clean end
+                }
+                final long pos = input.readLong();
+                final int length = input.readInt();
+                if (magic != MAGIC || length < DELETE || length > 64 * 1024 * 1024) {
+                    throw new IOException("Malformed record");
+                }
+                final byte[] payload = length != DELETE ? new byte[length] : null;
+                if (payload != null) input.readFully(payload);
+                final int expected = input.readInt();
+                final CRC32C crc = new CRC32C();
+                crc.update(ByteBuffer.allocate(RECORD_HEADER_SIZE).putInt(magic).putLong(pos).putInt(length).flip());
+                if (payload != null) crc.update(payload);
+                if ((int) crc.getValue() != expected) throw new IOException("Checksum mismatch");
+                latest.remove(pos);
+                latest.put(pos, payload);
+                records++;
+            }
+        } catch (IOException e) {
+            // a torn tail from the crash: everything before it is intact
+            LOGGER.warn("Chunk journal {} ends in an incomplete record after {} record(s), ignoring the rest", journal, records, e);
+        }
+    }
+
+    private static long generationOf(Path journal) {
+        final String name = journal.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Unexpected chunk journal name %s".formatted(name), e);
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import com.ishland.c2me.base.common.config.ConfigSystem;
+
+public class Config {
+
+    public static final int storageLanes = (int) new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.storageLanes")
+            .comment("""
+                    Number of storage threads each region directory is split across \s
+                    Chunks are assigned to lanes by region coordinates, so every region file \s
+                    is only ever opened by a single lane and per-chunk ordering is preserved \s
+                    Raise this on fast storage (e.g. NVMe) to let chunk IO use more than one core
+                    """)
+            .getLong(1, 1, ConfigSystem.LongChecks.THREAD_COUNT);
+
+    public static final boolean mmapReads = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.mmapReads")
+            .comment("""
+                    Whether to read region files through read-only memory mappings \s
+                    The storage thread only looks up the sector table and chunk payloads are \s
+                    decompressed straight out of the mapping on worker threads, so reads no longer \s
+                    serialize behind file reads on the storage thread \s
+                    Mostly useful for read-heavy servers, e.g. high no-tick view distances
+                    """)
+            .getBoolean(false, false);
+
+    private static final long DEFAULT_WRITE_BACKLOG_SOFT_LIMIT_MB = Math.max(64, Runtime.getRuntime().maxMemory() / 1024 / 1024 / 16);
+    private static final long DEFAULT_WRITE_BACKLOG_HARD_LIMIT_MB = Math.max(128, Runtime.getRuntime().maxMemory() / 1024 / 1024 / 8);
+
+    public static final long writeBacklogSoftLimitBytes = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.writeBacklogSoftLimitMB")
+            .comment("""
+                    Estimated heap, in MiB, of chunk data awaiting disk writes above which \s
+                    storage threads stop deferring writes in favor of reads \s
+                    Default is 1/16 of max heap (minimum 64)
+                    """)
+            .getLong(DEFAULT_WRITE_BACKLOG_SOFT_LIMIT_MB, DEFAULT_WRITE_BACKLOG_SOFT_LIMIT_MB, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY) * 1024 * 1024;
+
+    public static final long writeBacklogHardLimitBytes = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.writeBacklogHardLimitMB")
+            .comment("""
+                    Estimated heap, in MiB, of chunk data awaiting disk writes above which \s
+                    chunk saving waits for storage to catch up before serializing more chunks \s
+                    Default is 1/8 of max heap (minimum 128)
+                    """)
+            .getLong(DEFAULT_WRITE_BACKLOG_HARD_LIMIT_MB, DEFAULT_WRITE_BACKLOG_HARD_LIMIT_MB, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY) * 1024 * 1024;
+
+    public static final int syncParallelism = (int) new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.syncParallelism")
+            .comment("""
+                    Number of threads syncing region files to disk \s
+                    Durable flushes requested close together by any storage are grouped, \s
+                    and all region files they touched are synced in parallel
+                    """)
+            .getLong(4, 4, ConfigSystem.LongChecks.THREAD_COUNT);
+
+    public static final int regionFileCacheSize = (int) new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.regionFileCacheSize")
+            .comment("""
+                    Maximum number of region files each storage thread keeps open \s
+                    Region files of upcoming chunk loads, e.g. around players and at the \s
+                    no-tick view distance frontier, are opened in the background when idle \s
+                    Raise this when many players are spread across a large world
+                    """)
+            .getLong(256, 256, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY);
+
+    public static final boolean writeAheadJournal = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.writeAheadJournal")
+            .comment("""
+                    Whether to append chunk writes to a journal in the region directory \s
+                    instead of updating region files right away \s
+                    Journaled chunks are merged into region files in the background, region by region, \s
+                    and journals left behind by a crash are replayed on the next start \s
+                    Mostly useful on slow or network storage where random region file updates are expensive
+                    """)
+            .getBoolean(false, false);
+
+    public static final long writeAheadJournalMergeThresholdBytes = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.writeAheadJournalMergeThresholdMB")
+            .comment("""
+                    Size, in MiB, of the journal of each storage thread above which journaled chunks \s
+                    are merged into region files even while the storage is busy \s
+                    At twice this size everything is merged at once and the journal starts over
+                    """)
+            .getLong(64, 64, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY) * 1024 * 1024;
+
+    public static final boolean regionCompaction = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.regionCompaction")
+            .comment("""
+                    Whether to compact fragmented region files in the background \s
+                    Region files only ever reuse free sectors, so worlds that have been running \s
+                    for a long time accumulate free space and scattered chunks \s
+                    Idle storage threads move chunks into free sectors and shrink their open region files \s
+                    With mmapReads enabled, files are not shrunk while they may still be mapped
+                    """)
+            .getBoolean(false, false);
+
+    public static final int regionCompactionMinFreePercent = (int) new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.regionCompactionMinFreePercent")
+            .comment("""
+                    Share of free space, in percent, above which a region file is compacted
+                    """)
+            .getLong(25, 25, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY);
+
+    public static final long regionCompactionBytesPerSecond = new ConfigSystem.ConfigAccessor()
+            .key("ioSystem.regionCompactionKBPerSecond")
+            .comment("""
+                    I/O budget, in KiB per second, of region file compaction for each storage thread
+                    """)
+            .getLong(4096, 4096, ConfigSystem.LongChecks.POSITIVE_VALUES_ONLY) * 1024;
+
+    public static void init() {
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.world.storage.RegionFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Group commit for durable flushes of all storage threads.
+ * <p>
+ * While a batch of region files (and chunk journals) is being synced, sync requests from every storage
+ * accumulate into the next batch, which starts as soon as the running one is durable.
+ * The files of a batch are synced in parallel on a small pool, and every request of the
+ * batch completes once all of them are.
+ */
+public class GroupCommitSync {
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(Config.syncParallelism,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("C2ME Region Sync #%d").build());
+
+    private static final Object lock = new Object();
+    private static Batch pending = null;
+    private static boolean committing = false;
+
+    /**
+     * @return a future completing once all given region files are durable
+     */
+    static CompletableFuture<Void> sync(Collection<RegionFile> regionFiles) {
+        return sync(regionFiles, null);
+    }
+
+    /**
+     * @param journal a chunk journal to sync along with the region files, if any
+     * @return a future completing once all given region files and the journal are durable
+     */
+    static CompletableFuture<Void> sync(Collection<RegionFile> regionFiles, @Nullable ChunkJournal journal) {
+        if (regionFiles.isEmpty() && journal == null) return CompletableFuture.completedFuture(null);
+        synchronized (lock) {
+            if (pending == null) pending = new Batch();
+            pending.regionFiles.addAll(regionFiles);
+            if (journal != null) pending.journals.add(journal);
+            final CompletableFuture<Void> future = pending.future;
+            if (!committing) commitPending();
+            return future;
+        }
+    }
+
+    // must hold lock
+    private static void commitPending() {
+        final Batch batch = pending;
+        pending = null;
+        committing = true;
+        final CompletableFuture<?>[] futures = new CompletableFuture[batch.regionFiles.size() + batch.journals.size()];
+        int i = 0;
+        for (RegionFile regionFile : batch.regionFiles) {
+            futures[i++] = CompletableFuture.runAsync(() -> syncRegionFile(regionFile), pool);
+        }
+        for (ChunkJournal journal : batch.journals) {
+            futures[i++] = CompletableFuture.runAsync(() -> syncJournal(journal), pool);
+        }
+        CompletableFuture.allOf(futures).whenComplete((unused, throwable) -> {
+            if (throwable != null) batch.future.completeExceptionally(throwable);
+            else batch.future.complete(null);
+            synchronized (lock) {
+                committing = false;
+                if (pending != null) commitPending();
+            }
+        });
+    }
+
+    private static void syncRegionFile(RegionFile regionFile) {
+        try {
+            regionFile.sync();
+        } catch (ClosedChannelException e) {
+            // evicted from the region cache meanwhile; RegionFile.close() syncs before closing
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync region file", e);
+        }
+    }
+
+    private static void syncJournal(ChunkJournal journal) {
+        try {
+            journal.sync();
+        } catch (ClosedChannelException e) {
+            // rotated meanwhile; rotation syncs the previous generation before closing it
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync chunk journal", e);
+        }
+    }
+
+    private static class Batch {
+        private final ReferenceOpenHashSet<RegionFile> regionFiles = new ReferenceOpenHashSet<>();
+        private final ReferenceOpenHashSet<ChunkJournal> journals = new ReferenceOpenHashSet<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+    }
+
+}
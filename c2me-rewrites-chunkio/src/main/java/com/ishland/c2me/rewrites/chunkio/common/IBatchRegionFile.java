@@ -0,0 +1,20 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface IBatchRegionFile {
+
+    /**
+     * Write several chunks in one go: sectors are allocated in the order of the chunks'
+     * current sectors, physically adjacent payloads are written with a single gathering
+     * write, and the header is written once for the whole batch.
+     *
+     * @param positions distinct chunk positions within this region
+     * @param buffers   payloads in RegionFile.ChunkBuffer layout, each under 255 sectors
+     */
+    void writeChunksBatched(ChunkPos[] positions, ByteBuffer[] buffers) throws IOException;
+
+}
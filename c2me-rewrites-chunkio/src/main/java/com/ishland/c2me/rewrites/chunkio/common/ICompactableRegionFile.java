@@ -0,0 +1,29 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import java.io.IOException;
+
+public interface ICompactableRegionFile {
+
+    /**
+     * @return sectors in use by the header and chunk payloads
+     */
+    int getUsedSectors();
+
+    /**
+     * @return sectors taken up by the file on disk
+     */
+    long getFileSectors() throws IOException;
+
+    /**
+     * Move chunks from the end of the file into free sectors closer to its start, then
+     * optionally truncate the file past the last used sector. Chunks are moved like vanilla writes them:
+     * payload first, then the header, and their old sectors are only freed afterwards.
+     *
+     * @param maxBytes rough limit of payload bytes to move
+     * @param truncate  whether to truncate; must be false while the file may be memory mapped,
+     *                  as reads past the new end fault and Windows refuses to truncate mapped files
+     * @return payload bytes moved, 0 once the file is compact
+     */
+    long compactStep(long maxBytes, boolean truncate) throws IOException;
+
+}
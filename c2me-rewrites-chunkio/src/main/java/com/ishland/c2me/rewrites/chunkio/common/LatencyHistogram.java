@@ -0,0 +1,57 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * Bucket {@code i} counts samples below {@code 2^i} microseconds, the last one everything above.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 26; // up to ~33s
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        final int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        this.buckets.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(nanos);
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getMeanMicros() {
+        final long count = this.count.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(this.totalNanos.get() / count);
+    }
+
+    /**
+     * @return the upper bound in microseconds of the bucket holding the given quantile,
+     *         {@link Long#MAX_VALUE} if it falls into the overflow bucket
+     */
+    public long getQuantileUpperBoundMicros(double quantile) {
+        long total = 0;
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        final long target = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+}
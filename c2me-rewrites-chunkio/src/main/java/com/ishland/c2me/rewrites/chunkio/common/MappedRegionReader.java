@@ -0,0 +1,201 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import com.ishland.c2me.base.common.structs.ByteBufferInputStream;
+import it.unimi.dsi.fastutil.longs.Long2ReferenceLinkedOpenHashMap;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.ChunkStreamVersion;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory-mapped view of the region files owned by one storage thread.
+ * <p>
+ * Mapping and sector table lookups are storage-thread confined and never touch
+ * chunk payload pages; payloads are sliced out of the mapping and decoded on
+ * worker threads. Region files are still written through vanilla {@link net.minecraft.world.storage.RegionFile}
+ * on the storage thread, which calls {@link #onRegionWrite(ChunkPos)} first: that
+ * invalidates the parsed sector table and bumps a sequence number which workers
+ * re-check after decoding, since a concurrent write may have reused the sectors
+ * they were reading.
+ * <p>
+ * The sequence number is per region rather than per sector range, as the sectors a
+ * write is going to reuse aren't known before it happens. A read racing with any write
+ * to its region therefore goes through the stream path again. The mapping itself stays:
+ * writes go through the page cache it shares, so only the sector table is parsed again,
+ * and the file is mapped again only once a chunk lies past the end of the mapping.
+ */
+class MappedRegionReader {
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = SECTOR_SIZE * 2;
+    private static final int MAX_MAPPED_REGIONS = 256;
+
+    private final Path directory;
+    private final Long2ReferenceLinkedOpenHashMap<MappedRegion> regions = new Long2ReferenceLinkedOpenHashMap<>();
+
+    MappedRegionReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Locate the payload of a chunk. Storage thread only.
+     *
+     * @return the sectors of the chunk, or null if the chunk is not present on disk
+     * @throws IOException if the region cannot be mapped or its header is inconsistent;
+     *                     callers should fall back to the vanilla read path
+     */
+    @Nullable
+    Slice locate(ChunkPos pos) throws IOException {
+        final long regionKey = ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ());
+        MappedRegion region = this.regions.getAndMoveToFirst(regionKey);
+        if (region == null) {
+            region = new MappedRegion(this.directory.resolve("r." + pos.getRegionX() + "." + pos.getRegionZ() + ".mca"));
+            this.regions.putAndMoveToFirst(regionKey, region);
+            if (this.regions.size() > MAX_MAPPED_REGIONS) {
+                // writes to it won't reach the evicted entry anymore, so retire its slices now
+                this.regions.removeLast().writeSeq++;
+            }
+        }
+        if (!region.tableValid) {
+            region.refreshTable();
+        }
+        if (region.buffer == null) return null;
+
+        final int index = (pos.getRegionRelativeX()) | (pos.getRegionRelativeZ() << 5);
+        int entry = region.sectorTable[index];
+        if (entry == 0) return null;
+        if (endOf(entry) > region.buffer.capacity()) {
+            // the file grew since it was mapped
+            region.remap();
+            if (region.buffer == null) return null;
+            entry = region.sectorTable[index];
+            if (entry == 0) return null;
+        }
+        final int sectorOffset = entry >>> 8;
+        final int sectorCount = entry & 0xFF;
+        if (sectorOffset < 2 || endOf(entry) > region.buffer.capacity()) {
+            throw new IOException("Sector table entry of %s in %s is out of bounds".formatted(pos, region.path));
+        }
+        return new Slice(region, region.writeSeq, region.buffer.slice(sectorOffset * SECTOR_SIZE, sectorCount * SECTOR_SIZE));
+    }
+
+    private static long endOf(int entry) {
+        return (long) ((entry >>> 8) + (entry & 0xFF)) * SECTOR_SIZE;
+    }
+
+    /**
+     * Must be called on the storage thread before writing to or deleting from the region
+     * containing the given chunk.
+     */
+    void onRegionWrite(ChunkPos pos) {
+        final MappedRegion region = this.regions.get(ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ()));
+        if (region != null) {
+            region.tableValid = false;
+            region.writeSeq++;
+        }
+    }
+
+    void close() {
+        // mappings are released by the GC once in-flight slices are done with them
+        for (MappedRegion region : this.regions.values()) {
+            region.writeSeq++;
+        }
+        this.regions.clear();
+    }
+
+    private static class MappedRegion {
+
+        private final Path path;
+        private final int[] sectorTable = new int[1024];
+        private MappedByteBuffer buffer;
+        private boolean tableValid;
+        private volatile int writeSeq;
+
+        private MappedRegion(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Parse the sector table again, reusing the mapping if there is one.
+         */
+        private void refreshTable() throws IOException {
+            if (this.buffer == null) {
+                this.remap();
+                return;
+            }
+            this.readTable();
+            this.tableValid = true;
+        }
+
+        private void readTable() {
+            for (int i = 0; i < this.sectorTable.length; i++) {
+                this.sectorTable[i] = this.buffer.getInt(i * 4);
+            }
+        }
+
+        private void remap() throws IOException {
+            this.buffer = null;
+            try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size >= HEADER_SIZE) {
+                    if (size > Integer.MAX_VALUE) throw new IOException("Region file %s is too large to map".formatted(this.path));
+                    this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    this.readTable();
+                }
+            } catch (NoSuchFileException e) {
+                // not created yet; the next write to this region invalidates us again
+                if (Files.exists(this.path)) throw e;
+            }
+            this.tableValid = true;
+        }
+
+    }
+
+    record Slice(MappedRegion region, int seq, ByteBuffer sectors) {
+
+        /**
+         * @return whether no write touched the region since this slice was located
+         */
+        boolean isCurrent() {
+            return this.region.writeSeq == this.seq;
+        }
+
+        /**
+         * Open a decompressing stream directly over the mapped payload.
+         *
+         * @return the stream, or null if the payload needs the vanilla read path
+         *         (external .mcc chunks, unknown compression, malformed length)
+         */
+        @Nullable
+        DataInputStream open() throws IOException {
+            final int length = this.sectors.getInt(0);
+            if (length <= 1 || length > this.sectors.capacity() - 4) return null;
+            final byte version = this.sectors.get(4);
+            if ((version & 0x80) != 0) return null;
+            final ChunkStreamVersion streamVersion = ChunkStreamVersion.get(version);
+            if (streamVersion == null) return null;
+            return new DataInputStream(streamVersion.wrap(new ByteBufferInputStream(this.sectors.slice(5, length - 1))));
+        }
+
+        /**
+         * Copy the raw payload so it can be validated before being handed to a scanner,
+         * which cannot be rewound if the sectors turn out to have been reused.
+         */
+        Slice copy() {
+            final ByteBuffer copy = ByteBuffer.allocate(this.sectors.capacity());
+            copy.put(0, this.sectors, 0, this.sectors.capacity());
+            return new Slice(this.region, this.seq, copy);
+        }
+
+    }
+
+}
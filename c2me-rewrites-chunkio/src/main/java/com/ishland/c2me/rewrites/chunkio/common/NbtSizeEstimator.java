@@ -0,0 +1,56 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import net.minecraft.nbt.NbtByteArray;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIntArray;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLongArray;
+
+/**
+ * Rough retained heap size of an nbt tree, used for write backlog accounting.
+ * Object layout is approximated for a 64-bit JVM with compressed oops.
+ */
+class NbtSizeEstimator {
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int COMPOUND_BASE = OBJECT_HEADER + 48; // NbtCompound + HashMap
+    private static final int COMPOUND_ENTRY = 32 + 4; // HashMap.Node + table slot
+    private static final int STRING_BASE = 24 + ARRAY_HEADER;
+    private static final int LIST_BASE = OBJECT_HEADER + 24 + ARRAY_HEADER; // NbtList + ArrayList
+
+    static long estimate(NbtElement element) {
+        return switch (element.getType()) {
+            case NbtElement.BYTE_TYPE, NbtElement.SHORT_TYPE, NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> OBJECT_HEADER;
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> OBJECT_HEADER + 8;
+            case NbtElement.BYTE_ARRAY_TYPE -> OBJECT_HEADER + ARRAY_HEADER + (long) ((NbtByteArray) element).getByteArray().length;
+            case NbtElement.INT_ARRAY_TYPE -> OBJECT_HEADER + ARRAY_HEADER + 4L * ((NbtIntArray) element).getIntArray().length;
+            case NbtElement.LONG_ARRAY_TYPE -> OBJECT_HEADER + ARRAY_HEADER + 8L * ((NbtLongArray) element).getLongArray().length;
+            case NbtElement.STRING_TYPE -> OBJECT_HEADER + string(element.asString());
+            case NbtElement.LIST_TYPE -> {
+                final NbtList list = (NbtList) element;
+                long size = LIST_BASE + 4L * list.size();
+                for (int i = 0, listSize = list.size(); i < listSize; i++) {
+                    size += estimate(list.get(i));
+                }
+                yield size;
+            }
+            case NbtElement.COMPOUND_TYPE -> {
+                final NbtCompound compound = (NbtCompound) element;
+                long size = COMPOUND_BASE;
+                for (String key : compound.getKeys()) {
+                    size += COMPOUND_ENTRY + string(key) + estimate(compound.get(key));
+                }
+                yield size;
+            }
+            default -> OBJECT_HEADER;
+        };
+    }
+
+    private static long string(String string) {
+        // compact strings: latin-1 content is one byte per char
+        return STRING_BASE + string.length();
+    }
+
+}
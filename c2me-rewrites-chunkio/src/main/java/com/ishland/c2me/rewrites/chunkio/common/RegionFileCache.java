@@ -0,0 +1,136 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import it.unimi.dsi.fastutil.longs.Long2ReferenceLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.util.PathUtil;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionFile;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * LRU of the open region files of one storage thread, replacing the fixed-size
+ * cache of {@link net.minecraft.world.storage.RegionBasedStorage}. Storage-thread confined.
+ * <p>
+ * Besides regular lookups, region files can be pre-opened ahead of reads. Pre-opening
+ * never creates region files, and only evicts handles that have been idle for a while
+ * so that speculation cannot push out regions in active use.
+ */
+class RegionFileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Storage");
+
+    private static final long PRE_OPEN_EVICTION_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Path directory;
+    private final boolean dsync;
+    private final int limit;
+    private final Consumer<RegionFile> beforeClose;
+    // first is most recently used
+    private final Long2ReferenceLinkedOpenHashMap<Entry> files = new Long2ReferenceLinkedOpenHashMap<>();
+
+    RegionFileCache(Path directory, boolean dsync, int limit, Consumer<RegionFile> beforeClose) {
+        this.directory = directory;
+        this.dsync = dsync;
+        this.limit = limit;
+        this.beforeClose = beforeClose;
+    }
+
+    RegionFile get(ChunkPos pos) throws IOException {
+        final long regionKey = ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ());
+        final Entry entry = this.files.getAndMoveToFirst(regionKey);
+        if (entry != null) {
+            entry.lastAccess = System.nanoTime();
+            return entry.regionFile;
+        }
+        if (this.files.size() >= this.limit) {
+            this.closeEntry(this.files.removeLast());
+        }
+        PathUtil.createDirectories(this.directory);
+        final RegionFile regionFile = new RegionFile(this.path(pos.getRegionX(), pos.getRegionZ()), this.directory, this.dsync);
+        this.files.putAndMoveToFirst(regionKey, new Entry(regionFile, System.nanoTime()));
+        return regionFile;
+    }
+
+    /**
+     * @return the region file if it is open, without counting as a use
+     */
+    @Nullable
+    RegionFile getIfOpen(long regionKey) {
+        final Entry entry = this.files.get(regionKey);
+        return entry != null ? entry.regionFile : null;
+    }
+
+    LongArrayList getOpenRegions() {
+        return new LongArrayList(this.files.keySet());
+    }
+
+    /**
+     * Open an existing region file ahead of its first use.
+     */
+    void preOpen(long regionKey) {
+        if (this.files.containsKey(regionKey)) return;
+        final long now = System.nanoTime();
+        if (this.files.size() >= this.limit && now - this.files.get(this.files.lastLongKey()).lastAccess < PRE_OPEN_EVICTION_IDLE_NANOS) {
+            return;
+        }
+        final Path path = this.path(ChunkPos.getPackedX(regionKey), ChunkPos.getPackedZ(regionKey));
+        if (!Files.isRegularFile(path)) return;
+        if (this.files.size() >= this.limit) {
+            this.closeEntry(this.files.removeLast());
+        }
+        try {
+            final RegionFile regionFile = new RegionFile(path, this.directory, this.dsync);
+            // as if used now: it is about to be
+            this.files.putAndMoveToFirst(regionKey, new Entry(regionFile, now));
+        } catch (Throwable t) {
+            LOGGER.debug("Failed to pre-open region file {}", path, t);
+        }
+    }
+
+    void close() throws IOException {
+        IOException exception = null;
+        while (!this.files.isEmpty()) {
+            final Entry entry = this.files.removeFirst();
+            try {
+                this.beforeClose.accept(entry.regionFile);
+                entry.regionFile.close();
+            } catch (IOException e) {
+                if (exception == null) exception = e;
+                else exception.addSuppressed(e);
+            }
+        }
+        if (exception != null) throw exception;
+    }
+
+    private void closeEntry(Entry entry) {
+        try {
+            this.beforeClose.accept(entry.regionFile);
+            entry.regionFile.close();
+        } catch (Throwable t) {
+            LOGGER.error("Error closing region file", t);
+        }
+    }
+
+    private Path path(int regionX, int regionZ) {
+        return this.directory.resolve("r." + regionX + "." + regionZ + ".mca");
+    }
+
+    private static class Entry {
+        private final RegionFile regionFile;
+        private long lastAccess;
+
+        private Entry(RegionFile regionFile, long lastAccess) {
+            this.regionFile = regionFile;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import com.ishland.c2me.base.common.profiling.ChunkStorageIoEvent;
+import net.minecraft.util.math.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * I/O metrics of one storage thread. Safe to update from any thread.
+ */
+public class StorageMetrics {
+
+    public enum Stage {
+        /**
+         * Locating and reading chunk payloads from region files, storage thread
+         */
+        READ,
+        /**
+         * Decompressing and decoding chunk payloads, workers
+         */
+        DECOMPRESS,
+        /**
+         * Encoding and compressing chunk payloads, workers
+         */
+        COMPRESS,
+        /**
+         * Region file updates, storage thread
+         */
+        WRITE,
+    }
+
+    private final String name;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    final AtomicLong cacheHits = new AtomicLong();
+    final AtomicLong chunksRead = new AtomicLong();
+    final AtomicLong chunksWritten = new AtomicLong();
+    final AtomicLong bytesWritten = new AtomicLong();
+    final AtomicLong writesSkipped = new AtomicLong();
+    final AtomicLong bytesCompacted = new AtomicLong();
+    final AtomicLong writeRetries = new AtomicLong();
+    final AtomicLong writeFailures = new AtomicLong();
+
+    StorageMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return this.histograms[stage.ordinal()];
+    }
+
+    public long getCacheHits() {
+        return this.cacheHits.get();
+    }
+
+    public long getChunksRead() {
+        return this.chunksRead.get();
+    }
+
+    public long getChunksWritten() {
+        return this.chunksWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+
+    /**
+     * @return writes skipped because the chunk was unchanged
+     */
+    public long getWritesSkipped() {
+        return this.writesSkipped.get();
+    }
+
+    /**
+     * @return chunk bytes moved by region file compaction
+     */
+    public long getBytesCompacted() {
+        return this.bytesCompacted.get();
+    }
+
+    public long getWriteRetries() {
+        return this.writeRetries.get();
+    }
+
+    public long getWriteFailures() {
+        return this.writeFailures.get();
+    }
+
+    /**
+     * Start a JFR event for a stage, to be passed to {@link #record}.
+     *
+     * @return the event, or null if it is not being recorded
+     */
+    @Nullable
+    ChunkStorageIoEvent beginEvent() {
+        if (!ChunkStorageIoEvent.TYPE.isEnabled()) return null;
+        final ChunkStorageIoEvent event = new ChunkStorageIoEvent(this.name);
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} at the start of the stage
+     * @param pos the chunk, or the first chunk of a batch
+     */
+    void record(Stage stage, long startNanos, @Nullable ChunkStorageIoEvent event, long pos, int chunks, long bytes) {
+        this.histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name().toLowerCase();
+                event.chunkPosX = ChunkPos.getPackedX(pos);
+                event.chunkPosZ = ChunkPos.getPackedZ(pos);
+                event.chunks = chunks;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+}
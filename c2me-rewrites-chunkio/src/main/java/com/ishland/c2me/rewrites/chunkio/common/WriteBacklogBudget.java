@@ -0,0 +1,61 @@
+package com.ishland.c2me.rewrites.chunkio.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap budget shared by every storage thread for chunk data that was handed to
+ * storage but is not on disk yet (transit queue, write backlog and in-flight writes).
+ * <p>
+ * Crossing the soft limit makes storage threads flush at full rate regardless of
+ * pending reads. Crossing the hard limit makes {@link #awaitCapacity()} hand out
+ * incomplete futures, which savers wait on before serializing more chunks.
+ */
+public class WriteBacklogBudget {
+
+    private static final CompletableFuture<Void> AVAILABLE = CompletableFuture.completedFuture(null);
+
+    private static final AtomicLong pendingBytes = new AtomicLong(0);
+    private static final ConcurrentLinkedQueue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+
+    static CompletableFuture<Void> acquire(long bytes) {
+        if (bytes != 0) pendingBytes.addAndGet(bytes);
+        return awaitCapacity();
+    }
+
+    static void release(long bytes) {
+        if (bytes == 0) return;
+        if (pendingBytes.addAndGet(-bytes) <= Config.writeBacklogHardLimitBytes) {
+            releaseWaiters();
+        }
+    }
+
+    static boolean isOverSoftLimit() {
+        return pendingBytes.get() > Config.writeBacklogSoftLimitBytes;
+    }
+
+    public static long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * @return a future completing once pending chunk data is below the hard limit
+     */
+    public static CompletableFuture<Void> awaitCapacity() {
+        if (pendingBytes.get() <= Config.writeBacklogHardLimitBytes) return AVAILABLE;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(future);
+        // a release may have drained the waiters between the check and the add
+        if (pendingBytes.get() <= Config.writeBacklogHardLimitBytes) releaseWaiters();
+        return future;
+    }
+
+    private static void releaseWaiters() {
+        CompletableFuture<Void> future;
+        while ((future = waiters.poll()) != null) {
+            future.complete(null);
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.ishland.c2me.rewrites.chunkio.mixin;
+
+import com.ishland.c2me.rewrites.chunkio.common.IBatchRegionFile;
+import com.ishland.c2me.rewrites.chunkio.common.ICompactableRegionFile;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionFile;
+import net.minecraft.world.storage.SectorMap;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+@Mixin(RegionFile.class)
+public abstract class MixinRegionFile implements IBatchRegionFile, ICompactableRegionFile {
+
+    private static final ByteBuffer ZERO_SECTOR = ByteBuffer.allocateDirect(4096);
+
+    @Shadow @Final private FileChannel channel;
+
+    @Shadow @Final private IntBuffer sectorData;
+
+    @Shadow @Final private IntBuffer saveTimes;
+
+    @Shadow @Final protected SectorMap sectors;
+
+    @Shadow
+    private static int getIndex(ChunkPos pos) {
+        throw new AbstractMethodError();
+    }
+
+    @Shadow
+    private static int getOffset(int sectorData) {
+        throw new AbstractMethodError();
+    }
+
+    @Shadow
+    private static int getSize(int sectorData) {
+        throw new AbstractMethodError();
+    }
+
+    @Shadow
+    private static int getSectorCount(int byteCount) {
+        throw new AbstractMethodError();
+    }
+
+    @Shadow protected abstract int packSectorData(int offset, int size);
+
+    @Shadow protected abstract void writeHeader() throws IOException;
+
+    @Shadow protected abstract Path getExternalChunkPath(ChunkPos chunkPos);
+
+    @Override
+    public synchronized void writeChunksBatched(ChunkPos[] positions, ByteBuffer[] buffers) throws IOException {
+        final int count = positions.length;
+        final int[] indices = new int[count];
+        final int[] oldSectorData = new int[count];
+        final int[] oldSaveTimes = new int[count];
+        final int[] newOffsets = new int[count];
+        final int[] newSizes = new int[count];
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = getIndex(positions[i]);
+            oldSectorData[i] = this.sectorData.get(indices[i]);
+            oldSaveTimes[i] = this.saveTimes.get(indices[i]);
+            newSizes[i] = getSectorCount(buffers[i].remaining());
+            if (newSizes[i] >= 256) throw new IllegalArgumentException("Oversized chunk " + positions[i]);
+            order[i] = i;
+        }
+
+        // allocate following the current layout so rewrites of neighboring chunks
+        // tend to land on neighboring sectors again
+        IntArrays.quickSort(order, (a, b) -> Integer.compare(getOffset(oldSectorData[a]), getOffset(oldSectorData[b])));
+        for (int i : order) {
+            newOffsets[i] = this.sectors.allocate(newSizes[i]);
+        }
+
+        boolean headerUpdated = false;
+        try {
+            // write payloads in sector order, one gathering write per contiguous run
+            IntArrays.quickSort(order, (a, b) -> Integer.compare(newOffsets[a], newOffsets[b]));
+            final ArrayList<ByteBuffer> run = new ArrayList<>();
+            int runStart = -1;
+            int runEnd = -1;
+            for (int i : order) {
+                if (newOffsets[i] != runEnd) {
+                    writeRun(runStart, run);
+                    runStart = newOffsets[i];
+                } else {
+                    // pad the previous payload out to its sector boundary
+                    final int padding = (int) (((long) runEnd - runStart) * 4096 - runBytes(run));
+                    if (padding > 0) run.add(ZERO_SECTOR.slice(0, padding));
+                }
+                run.add(buffers[i]);
+                runEnd = newOffsets[i] + newSizes[i];
+            }
+            writeRun(runStart, run);
+
+            // one header update for the whole batch
+            final int now = (int) (Util.getEpochTimeMs() / 1000L);
+            headerUpdated = true;
+            for (int i = 0; i < count; i++) {
+                this.saveTimes.put(indices[i], now);
+                this.sectorData.put(indices[i], this.packSectorData(newOffsets[i], newSizes[i]));
+            }
+            this.writeHeader();
+        } catch (Throwable t) {
+            if (headerUpdated) {
+                for (int i = 0; i < count; i++) {
+                    this.saveTimes.put(indices[i], oldSaveTimes[i]);
+                    this.sectorData.put(indices[i], oldSectorData[i]);
+                }
+                try {
+                    this.writeHeader();
+                } catch (Throwable t1) {
+                    // the header on disk may still point at the new sectors: don't hand them out again
+                    t.addSuppressed(t1);
+                    throw t;
+                }
+            }
+            // the sectors would otherwise stay taken until the region is reopened,
+            // growing the file on every retry of the storage thread
+            for (int i = 0; i < count; i++) {
+                this.sectors.free(newOffsets[i], newSizes[i]);
+            }
+            throw t;
+        }
+
+        // same ordering as vanilla writeChunk: only give up old data once the header points away from it
+        for (int i = 0; i < count; i++) {
+            Files.deleteIfExists(this.getExternalChunkPath(positions[i]));
+            final int oldOffset = getOffset(oldSectorData[i]);
+            if (oldOffset != 0) {
+                this.sectors.free(oldOffset, getSize(oldSectorData[i]));
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getUsedSectors() {
+        int used = 2; // header
+        for (int i = 0; i < 1024; i++) {
+            used += getSize(this.sectorData.get(i));
+        }
+        return used;
+    }
+
+    @Override
+    public synchronized long getFileSectors() throws IOException {
+        return (this.channel.size() + 4095) / 4096;
+    }
+
+    @Override
+    public synchronized long compactStep(long maxBytes, boolean truncate) throws IOException {
+        // last chunks first: they are what keeps the file from shrinking
+        final IntArrayList candidates = new IntArrayList(1024);
+        for (int i = 0; i < 1024; i++) {
+            if (getOffset(this.sectorData.get(i)) != 0) candidates.add(i);
+        }
+        final int[] order = candidates.toIntArray();
+        IntArrays.quickSort(order, (a, b) -> Integer.compare(getOffset(this.sectorData.get(b)), getOffset(this.sectorData.get(a))));
+
+        final IntArrayList moved = new IntArrayList();
+        final IntArrayList oldSectorData = new IntArrayList();
+        long movedBytes = 0;
+        for (int index : order) {
+            if (movedBytes >= maxBytes) break;
+            final int sectorData = this.sectorData.get(index);
+            final int offset = getOffset(sectorData);
+            final int size = getSize(sectorData);
+            final int newOffset = this.sectors.allocate(size);
+            if (newOffset >= offset) {
+                // no hole in front of it
+                this.sectors.free(newOffset, size);
+                continue;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(size * 4096);
+            while (buffer.hasRemaining() && this.channel.read(buffer, (long) offset * 4096 + buffer.position()) >= 0) ;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer, (long) newOffset * 4096 + buffer.position());
+            }
+            this.sectorData.put(index, this.packSectorData(newOffset, size));
+            moved.add(index);
+            oldSectorData.add(sectorData);
+            movedBytes += (long) size * 4096;
+        }
+
+        if (!moved.isEmpty()) {
+            // save times are left alone: the chunks did not change
+            this.writeHeader();
+            for (int i = 0; i < moved.size(); i++) {
+                this.sectors.free(getOffset(oldSectorData.getInt(i)), getSize(oldSectorData.getInt(i)));
+            }
+        }
+
+        if (!truncate) return movedBytes;
+
+        long end = 2;
+        for (int i = 0; i < 1024; i++) {
+            final int sectorData = this.sectorData.get(i);
+            if (getOffset(sectorData) != 0) end = Math.max(end, getOffset(sectorData) + getSize(sectorData));
+        }
+        if (this.channel.size() > end * 4096) {
+            // the header must not point past the end of the file after a crash
+            this.channel.force(true);
+            this.channel.truncate(end * 4096);
+        }
+        return movedBytes;
+    }
+
+    private static long runBytes(ArrayList<ByteBuffer> run) {
+        long bytes = 0;
+        for (ByteBuffer buffer : run) {
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+
+    private void writeRun(int startSector, ArrayList<ByteBuffer> run) throws IOException {
+        if (run.isEmpty()) return;
+        final ByteBuffer[] srcs = run.toArray(ByteBuffer[]::new);
+        final ByteBuffer last = srcs[srcs.length - 1];
+        // only used with positional writes elsewhere, so moving the position is safe
+        this.channel.position((long) startSector * 4096);
+        while (last.hasRemaining()) {
+            this.channel.write(srcs);
+        }
+        run.clear();
+    }
+
+}
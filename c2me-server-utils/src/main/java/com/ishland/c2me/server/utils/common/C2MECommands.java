@@ -1,7 +1,13 @@
 package com.ishland.c2me.server.utils.common;
 
+import com.ishland.c2me.base.common.scheduler.IVanillaChunkManager;
+import com.ishland.c2me.base.common.scheduler.SchedulerLane;
+import com.ishland.c2me.base.common.scheduler.SchedulingManager;
 import com.ishland.c2me.base.mixin.access.IServerChunkManager;
 import com.ishland.c2me.notickvd.common.IChunkTicketManager;
+import com.ishland.c2me.rewrites.chunkio.common.C2MEStorageThread;
+import com.ishland.c2me.rewrites.chunkio.common.LatencyHistogram;
+import com.ishland.c2me.rewrites.chunkio.common.StorageMetrics;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import net.fabricmc.loader.api.FabricLoader;
@@ -22,6 +28,15 @@ public class C2MECommands {
                                         .requires(unused -> com.ishland.c2me.notickvd.ModuleEntryPoint.enabled)
                                         .executes(C2MECommands::noTickCommand)
                         )
+                        .then(
+                                CommandManager.literal("storage")
+                                        .requires(unused -> com.ishland.c2me.rewrites.chunkio.ModuleEntryPoint.enabled)
+                                        .executes(C2MECommands::storageCommand)
+                        )
+                        .then(
+                                CommandManager.literal("scheduler")
+                                        .executes(C2MECommands::schedulerCommand)
+                        )
                         .then(
                                 CommandManager.literal("debug")
                                         .requires(unused -> FabricLoader.getInstance().isDevelopmentEnvironment())
@@ -40,4 +55,43 @@ public class C2MECommands {
         return 0;
     }
 
+    private static int storageCommand(CommandContext<ServerCommandSource> ctx) {
+        for (C2MEStorageThread storage : C2MEStorageThread.getInstances()) {
+            final StorageMetrics metrics = storage.getMetrics();
+            ctx.getSource().sendFeedback(() -> Text.of(String.format("%s: pending reads %d, pending writes %d, write backlog %d, in-flight writes %d",
+                    metrics.getName(), storage.getPendingReads(), storage.getPendingWrites(), storage.getWriteBacklogSize(), storage.getInFlightWrites())), false);
+            ctx.getSource().sendFeedback(() -> Text.of(String.format("  chunks read %d (cache hits %d), chunks written %d (%d KiB), unchanged %d, write retries %d, failed writes %d, region compaction moved %d KiB",
+                    metrics.getChunksRead(), metrics.getCacheHits(), metrics.getChunksWritten(), metrics.getBytesWritten() / 1024, metrics.getWritesSkipped(), metrics.getWriteRetries(), metrics.getWriteFailures(), metrics.getBytesCompacted() / 1024)), false);
+            for (StorageMetrics.Stage stage : StorageMetrics.Stage.values()) {
+                final LatencyHistogram histogram = metrics.getHistogram(stage);
+                ctx.getSource().sendFeedback(() -> Text.of(String.format("  %s: n=%d mean=%dus p50<%s p99<%s p999<%s",
+                        stage.name().toLowerCase(), histogram.getCount(), histogram.getMeanMicros(),
+                        formatMicros(histogram.getQuantileUpperBoundMicros(0.5)),
+                        formatMicros(histogram.getQuantileUpperBoundMicros(0.99)),
+                        formatMicros(histogram.getQuantileUpperBoundMicros(0.999)))), false);
+            }
+        }
+
+        return 0;
+    }
+
+    private static int schedulerCommand(CommandContext<ServerCommandSource> ctx) {
+        final ServerChunkManager chunkManager = ctx.getSource().getWorld().toServerWorld().getChunkManager();
+        final SchedulingManager schedulingManager = ((IVanillaChunkManager) chunkManager.threadedAnvilChunkStorage).c2me$getSchedulingManager();
+        ctx.getSource().sendFeedback(() -> Text.of(String.format("Queued neighbor-locked tasks: %d (lane %s)", schedulingManager.getQueuedTasks(), schedulingManager.getLane().getName())), false);
+        for (SchedulerLane lane : SchedulerLane.getLanes()) {
+            ctx.getSource().sendFeedback(() -> Text.of(String.format("%s: queued %d, completed %d, busy %dms, turns %d (%d yielded)",
+                    lane.getName(), lane.getQueuedTasks(), lane.getCompletedTasks(), lane.getBusyMillis(), lane.getTurns(), lane.getYieldedTurns())), false);
+        }
+
+        return 0;
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros == Long.MAX_VALUE) return "inf";
+        if (micros >= 1_000_000) return micros / 1_000_000 + "s";
+        if (micros >= 1_000) return micros / 1_000 + "ms";
+        return micros + "us";
+    }
+
 }
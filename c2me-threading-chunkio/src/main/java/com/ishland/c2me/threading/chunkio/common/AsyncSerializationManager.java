@@ -1,6 +1,9 @@
 package com.ishland.c2me.threading.chunkio.common;
 
+import com.ishland.c2me.base.mixin.access.IChunkLightProvider;
+import com.ishland.c2me.base.mixin.access.ILightStorage;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.server.world.ServerWorld;
@@ -10,6 +13,7 @@ import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.LightType;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkToNibbleArrayMap;
 import net.minecraft.world.chunk.light.ChunkLightingView;
 import net.minecraft.world.chunk.light.LightingProvider;
 import org.jetbrains.annotations.NotNull;
@@ -27,6 +31,9 @@ public class AsyncSerializationManager {
 
     public static final boolean DEBUG = Boolean.getBoolean("c2me.chunkio.debug");
 
+    // replaces the light engine and makes no promises about the arrays it hands out
+    private static final boolean STARLIGHT = FabricLoader.getInstance().isModLoaded("starlight");
+
     private static final Logger LOGGER = LoggerFactory.getLogger("C2ME Async Serialization Manager");
 
     // C2ME fix: Maximum allowed scope stack depth to prevent memory leaks
@@ -161,12 +168,24 @@ public class AsyncSerializationManager {
             private final LightType lightType;
             private final Map<ChunkSectionPos, ChunkNibbleArray> cachedData = new Object2ObjectOpenHashMap<>();
 
+            /**
+             * Arrays of the light engine's published view are copy-on-write already: the engine
+             * replaces a published array with a copy on its next write to the section. Those are
+             * kept by reference, only arrays that have not been published yet are copied.
+             */
             CachedLightingView(LightingProvider provider, ChunkPos pos, LightType type) {
                 this.lightType = type;
+                final ChunkLightingView view = provider.get(type);
+                final ChunkToNibbleArrayMap<?> published = !STARLIGHT && view instanceof IChunkLightProvider lightProvider
+                        ? ((ILightStorage) lightProvider.getLightStorage()).getUncachedStorage()
+                        : null;
                 for (int i = provider.getBottomY(); i < provider.getTopY(); i++) {
                     final ChunkSectionPos sectionPos = ChunkSectionPos.from(pos, i);
-                    ChunkNibbleArray lighting = provider.get(type).getLightSection(sectionPos);
-                    cachedData.put(sectionPos, lighting != null ? lighting.copy() : null);
+                    ChunkNibbleArray lighting = view.getLightSection(sectionPos);
+                    if (lighting != null && (published == null || published.get(sectionPos.asLong()) != lighting)) {
+                        lighting = lighting.copy();
+                    }
+                    cachedData.put(sectionPos, lighting);
                 }
             }
 
@@ -4,6 +4,7 @@ import com.ibm.asyncutil.locks.AsyncNamedLock;
 import com.ishland.c2me.base.common.GlobalExecutors;
 import com.ishland.c2me.base.common.registry.SerializerAccess;
 import com.ishland.c2me.base.common.theinterface.IDirectStorage;
+import com.ishland.c2me.base.common.theinterface.IPrioritizedStorage;
 import com.ishland.c2me.base.common.util.SneakyThrow;
 import com.ishland.c2me.base.mixin.access.IVersionedChunkStorage;
 import com.ishland.c2me.threading.chunkio.common.AsyncSerializationManager;
@@ -21,6 +22,7 @@ import it.unimi.dsi.fastutil.longs.Long2ByteMaps;
 import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import net.minecraft.SharedConstants;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.world.ChunkHolder;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.server.world.ThreadedAnvilChunkStorage;
@@ -37,6 +39,7 @@ import net.minecraft.world.gen.chunk.ChunkGenerator;
 import net.minecraft.world.poi.PointOfInterestStorage;
 import net.minecraft.world.storage.StorageIoWorker;
 import net.minecraft.world.storage.VersionedChunkStorage;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.spongepowered.asm.mixin.Dynamic;
 import org.spongepowered.asm.mixin.Final;
@@ -48,7 +51,11 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
@@ -116,6 +123,8 @@ public abstract class MixinThreadedAnvilChunkStorage extends VersionedChunkStora
 
     @Shadow protected abstract NbtCompound updateChunkNbt(NbtCompound nbt);
 
+    @Shadow @Nullable protected abstract ChunkHolder getCurrentChunkHolder(long pos);
+
     private AsyncNamedLock<ChunkPos> chunkLock = AsyncNamedLock.createFair();
 
     @Inject(method = "<init>", at = @At("RETURN"))
@@ -138,6 +147,11 @@ public abstract class MixinThreadedAnvilChunkStorage extends VersionedChunkStora
             scheduledChunks.add(pos);
         }
 
+        final ChunkHolder holder = this.getCurrentChunkHolder(pos.toLong());
+        if (holder != null) {
+            prioritizeReads(pos, IPrioritizedStorage.forLevel(holder.getLevel()), true);
+        }
+
         final CompletableFuture<Optional<NbtCompound>> poiData =
                 ((IAsyncChunkStorage) ((com.ishland.c2me.base.mixin.access.ISerializingRegionBasedStorage) this.pointOfInterestStorage).getWorker()).getNbtAtAsync(pos)
                         .exceptionally(throwable -> {
@@ -153,27 +167,37 @@ public abstract class MixinThreadedAnvilChunkStorage extends VersionedChunkStora
 
         final ReferenceArrayList<Runnable> mainThreadQueue = new ReferenceArrayList<>();
 
-        final CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> future = getUpdatedChunkNbtAtAsync(pos)
-                .thenApply(optional -> optional.filter(nbtCompound -> {
-                    boolean bl = containsStatus(nbtCompound);
-                    if (!bl) {
-                        LOGGER.error("Chunk file at {} is missing level data, skipping", pos);
-                    }
-
-                    return bl;
-                }))
-                .thenApplyAsync(optional -> {
-                    if (optional.isPresent()) {
+        final SerializerAccess.Deserializer deserializer = SerializerAccess.getDeserializer();
+        final CompletableFuture<ProtoChunk> deserialized;
+        if (deserializer != null && ((IVersionedChunkStorage) this).getWorker() instanceof IDirectStorage storage && storage.supportsRawChunkData()) {
+            deserialized = storage.getRawChunkData(pos)
+                    .thenApplyAsync(optional -> {
+                        if (optional.isEmpty()) return null;
+                        final byte[] data = optional.get();
                         ChunkIoMainThreadTaskUtils.push(mainThreadQueue);
                         try {
-                            return ChunkSerializer.deserialize(this.world, this.pointOfInterestStorage, pos, optional.get());
+                            final ProtoChunk protoChunk = deserializer.deserialize(this.world, this.pointOfInterestStorage, pos, data, ChunkIoMainThreadTaskUtils::executeMain);
+                            if (protoChunk != null) return protoChunk;
                         } finally {
                             ChunkIoMainThreadTaskUtils.pop(mainThreadQueue);
                         }
-                    }
+                        // not understood by the deserializer, e.g. data of older versions
+                        final NbtCompound nbt;
+                        try {
+                            nbt = NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+                        } catch (IOException e) {
+                            SneakyThrow.sneaky(e);
+                            return null; // unreachable
+                        }
+                        final boolean outdated = VersionedChunkStorage.getDataVersion(nbt) != SharedConstants.getGameVersion().getSaveVersion().getId();
+                        return deserializeNbt(pos, Optional.of(outdated ? updateChunkNbt(nbt) : nbt), mainThreadQueue);
+                    }, GlobalExecutors.executor);
+        } else {
+            deserialized = getUpdatedChunkNbtAtAsync(pos)
+                    .thenApplyAsync(optional -> deserializeNbt(pos, optional, mainThreadQueue), GlobalExecutors.executor);
+        }
 
-                    return null;
-                }, GlobalExecutors.executor)
+        final CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> future = deserialized
                 .exceptionally(throwable -> {
                     //noinspection IfStatementWithIdenticalBranches
                     if (Config.recoverFromErrors) {
@@ -221,6 +245,45 @@ public abstract class MixinThreadedAnvilChunkStorage extends VersionedChunkStora
 // stale pre-1.18 vanilla reference copy removed
     }
 
+    @Nullable
+    private ProtoChunk deserializeNbt(ChunkPos pos, Optional<NbtCompound> optional, ReferenceArrayList<Runnable> mainThreadQueue) {
+        optional = optional.filter(nbtCompound -> {
+            boolean bl = containsStatus(nbtCompound);
+            if (!bl) {
+                LOGGER.error("Chunk file at {} is missing level data, skipping", pos);
+            }
+
+            return bl;
+        });
+        if (optional.isPresent()) {
+            ChunkIoMainThreadTaskUtils.push(mainThreadQueue);
+            try {
+                return ChunkSerializer.deserialize(this.world, this.pointOfInterestStorage, pos, optional.get());
+            } finally {
+                ChunkIoMainThreadTaskUtils.pop(mainThreadQueue);
+            }
+        }
+
+        return null;
+    }
+
+    private void prioritizeReads(ChunkPos pos, int priority, boolean sticky) {
+        if (((IVersionedChunkStorage) this).getWorker() instanceof IPrioritizedStorage storage) {
+            storage.prioritizeRead(pos, priority, sticky);
+        }
+        if (((com.ishland.c2me.base.mixin.access.ISerializingRegionBasedStorage) this.pointOfInterestStorage).getWorker() instanceof IPrioritizedStorage storage) {
+            storage.prioritizeRead(pos, priority, sticky);
+        }
+    }
+
+    @Inject(method = "setLevel", at = @At("HEAD"))
+    private void onSetLevel(long pos, int level, @Nullable ChunkHolder holder, int i, CallbackInfoReturnable<ChunkHolder> cir) {
+        // a chunk becoming more urgent while its read is still queued in storage
+        if (holder != null && level < i) {
+            prioritizeReads(new ChunkPos(pos), IPrioritizedStorage.forLevel(level), false);
+        }
+    }
+
     private CompletableFuture<Optional<NbtCompound>> getUpdatedChunkNbtAtAsync(ChunkPos pos) {
         return getUpdatedChunkNbt(pos);
     }
@@ -338,6 +401,8 @@ public abstract class MixinThreadedAnvilChunkStorage extends VersionedChunkStora
                             }
                             return lockToken;
                         })
+                        // don't produce more chunk data while storage is over its write backlog budget
+                        .thenCompose(lockToken -> ((IDirectStorage) ((IVersionedChunkStorage) this).getWorker()).getWriteBackpressure().thenApply(unused -> lockToken))
                         .thenCompose(lockToken ->
                         CompletableFuture.supplyAsync(() -> {
                                     scope.open();
@@ -13,6 +13,7 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.ChunkStatus;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -73,6 +74,7 @@ public class ChunkStatusUtils {
 
         final NeighborLockingTask<T> task = new NeighborLockingTask<>(
                 schedulingManager,
+                target.toLong(),
                 lockTargets,
                 isCancelled,
                 action
@@ -88,13 +90,13 @@ public class ChunkStatusUtils {
 
         PARALLELIZED() {
             @Override
-            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
+            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Executor lane, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
                 return CompletableFuture.supplyAsync(completableFuture, GlobalExecutors.executor).thenCompose(Function.identity());
             }
         },
         SINGLE_THREADED() {
             @Override
-            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
+            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Executor lane, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
                 Preconditions.checkNotNull(lock);
                 return lock.acquireLock().toCompletableFuture().thenComposeAsync(lockToken -> {
                     try {
@@ -107,12 +109,13 @@ public class ChunkStatusUtils {
         },
         AS_IS() {
             @Override
-            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
-                return completableFuture.get();
+            public CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Executor lane, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture) {
+                // one at a time per world, like vanilla's worldgen mailbox
+                return CompletableFuture.supplyAsync(completableFuture, lane).thenCompose(Function.identity());
             }
         };
 
-        public abstract CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture);
+        public abstract CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>> runTask(AsyncLock lock, Executor lane, Supplier<CompletableFuture<Either<Chunk, ChunkHolder.Unloaded>>> completableFuture);
 
     }
 }
@@ -1,5 +1,6 @@
 package com.ishland.c2me.threading.worldgen.mixin;
 
+import com.ishland.c2me.base.common.scheduler.SchedulingManager;
 import com.ishland.c2me.base.common.scheduler.ThreadLocalWorldGenSchedulingState;
 import com.ishland.c2me.base.common.util.SneakyThrow;
 import com.ishland.c2me.base.mixin.access.IThreadedAnvilChunkStorage;
@@ -124,14 +125,15 @@ public abstract class MixinChunkStatus implements IChunkStatus {
 //                System.out.println(String.format("%s: %s is already done or cancelled, skipping generation", this, targetChunk.getPos()));
             } else {
                 int lockRadius = Config.reduceLockRadius && this.reducedTaskRadius != -1 ? this.reducedTaskRadius : this.taskMargin;
+                final SchedulingManager schedulingManager = ((IVanillaChunkManager) tacs).c2me$getSchedulingManager();
                 //noinspection ConstantConditions
                 completableFuture = ChunkStatusUtils.runChunkGenWithLock(
                                 targetChunk.getPos(),
                                 thiz,
                                 holder,
                                 lockRadius,
-                                ((IVanillaChunkManager) tacs).c2me$getSchedulingManager(),
-                                () -> ChunkStatusUtils.getThreadingType(thiz).runTask(((IWorldGenLockable) world).getWorldGenSingleThreadedLock(), generationTask))
+                                schedulingManager,
+                                () -> ChunkStatusUtils.getThreadingType(thiz).runTask(((IWorldGenLockable) world).getWorldGenSingleThreadedLock(), schedulingManager.getLane(), generationTask))
                         .exceptionally(t -> {
                             Throwable actual = t;
                             while (actual instanceof CompletionException ce && ce.getCause() != null) actual = ce.getCause();
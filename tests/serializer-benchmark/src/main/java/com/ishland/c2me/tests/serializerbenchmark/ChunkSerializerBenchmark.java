@@ -0,0 +1,97 @@
+package com.ishland.c2me.tests.serializerbenchmark;
+
+import com.ishland.c2me.rewrites.chunk_serializer.common.ChunkDataSerializer;
+import com.ishland.c2me.rewrites.chunk_serializer.common.NbtWriter;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ProtoChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkSerializerBenchmark {
+
+    @Param({"SPARSE", "DENSE", "BLOCK_ENTITIES", "TICKS", "STRUCTURES", "UPGRADED"})
+    public SyntheticChunks.Shape shape;
+
+    // whether every section changed since the last save, so that none of their encodings can be reused
+    @Param({"false", "true"})
+    public boolean modifiedSections;
+
+    private ServerWorld world;
+    private ProtoChunk chunk;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.world = SerializerBenchmark.getWorld();
+        this.chunk = SyntheticChunks.create(this.world, this.shape);
+    }
+
+    @Setup(Level.Invocation)
+    public void modifySections() {
+        if (!this.modifiedSections) return;
+        for (ChunkSection section : this.chunk.getSectionArray()) {
+            // setting the same state still counts as a change
+            section.setBlockState(0, 0, 0, section.getBlockState(0, 0, 0), false);
+        }
+    }
+
+    /**
+     * Vanilla up to the NBT tree, which is encoded later on the IO thread.
+     */
+    @Benchmark
+    public NbtCompound vanilla() {
+        return ChunkSerializer.serialize(this.world, this.chunk);
+    }
+
+    /**
+     * Vanilla up to the same uncompressed bytes the reduced allocation serializer produces.
+     */
+    @Benchmark
+    public byte[] vanillaEncoded() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            NbtIo.write(ChunkSerializer.serialize(this.world, this.chunk), out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] c2me() {
+        return writeC2ME(this.world, this.chunk);
+    }
+
+    /**
+     * The reduced allocation serializer, the way chunk saving calls it.
+     */
+    static byte[] writeC2ME(ServerWorld world, ProtoChunk chunk) {
+        final NbtWriter nbtWriter = new NbtWriter();
+        try {
+            nbtWriter.start(NbtElement.COMPOUND_TYPE);
+            ChunkDataSerializer.write(world, chunk, nbtWriter);
+            nbtWriter.finishCompound();
+            return nbtWriter.toByteArray();
+        } finally {
+            nbtWriter.release();
+        }
+    }
+
+}
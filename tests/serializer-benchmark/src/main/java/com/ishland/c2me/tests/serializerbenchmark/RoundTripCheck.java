@@ -0,0 +1,133 @@
+package com.ishland.c2me.tests.serializerbenchmark;
+
+import com.ishland.c2me.rewrites.chunk_serializer.common.ChunkDataDeserializer;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.ProtoChunk;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Checks that the reduced allocation serializer saves exactly what vanilla saves, and that what it
+ * saved loads back, through both vanilla and the in-place deserializer, into the same chunk.
+ * <p>
+ * Chunks are compared as canonical NBT bytes, i.e. with the entries of compounds sorted by name,
+ * as entry order is the only thing that may legitimately differ.
+ */
+final class RoundTripCheck {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // the marker entry of the reduced allocation serializer
+    private static final String C2ME_MARKER = "C2ME";
+
+    private RoundTripCheck() {
+    }
+
+    /**
+     * @return whether the chunk passed
+     */
+    static boolean check(ServerWorld world, SyntheticChunks.Shape shape, ProtoChunk chunk) throws IOException {
+        final NbtCompound vanilla = ChunkSerializer.serialize(world, chunk);
+        final byte[] expected = canonicalBytes(vanilla);
+
+        final byte[] written = ChunkSerializerBenchmark.writeC2ME(world, chunk);
+        final NbtCompound c2me = NbtIo.read(new DataInputStream(new ByteArrayInputStream(written)));
+        c2me.remove(C2ME_MARKER);
+        boolean passed = compare(shape, "serialized", vanilla, expected, c2me);
+
+        final ProtoChunk loadedByVanilla = ChunkSerializer.deserialize(world, world.getPointOfInterestStorage(), chunk.getPos(), c2me);
+        passed &= compare(shape, "loaded by vanilla", vanilla, expected, ChunkSerializer.serialize(world, loadedByVanilla));
+
+        final ProtoChunk loadedInPlace = ChunkDataDeserializer.read(world, world.getPointOfInterestStorage(), chunk.getPos(), written, Runnable::run);
+        if (loadedInPlace == null) {
+            // every synthetic chunk is one the in-place loader is meant to handle
+            LOGGER.error("{}: not loaded in place, vanilla would load it instead", shape);
+            passed = false;
+        } else {
+            passed &= compare(shape, "loaded in place", vanilla, expected, ChunkSerializer.serialize(world, loadedInPlace));
+        }
+
+        LOGGER.info("{}: round trip {} ({} bytes)", shape, passed ? "passed" : "FAILED", written.length);
+        return passed;
+    }
+
+    private static boolean compare(SyntheticChunks.Shape shape, String stage, NbtCompound vanilla, byte[] expected, NbtCompound actual) {
+        if (Arrays.equals(expected, canonicalBytes(actual))) return true;
+        LOGGER.error("{}: {} chunk differs from vanilla at {}", shape, stage, findDifference("", vanilla, actual));
+        return false;
+    }
+
+    static byte[] canonicalBytes(NbtCompound compound) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(NbtElement.COMPOUND_TYPE);
+            out.writeUTF("");
+            writeCanonical(out, compound);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeCanonical(DataOutput out, NbtElement element) throws IOException {
+        if (element instanceof NbtCompound compound) {
+            for (String key : new TreeSet<>(compound.getKeys())) {
+                final NbtElement value = compound.get(key);
+                out.writeByte(value.getType());
+                out.writeUTF(key);
+                writeCanonical(out, value);
+            }
+            out.writeByte(NbtElement.END_TYPE);
+        } else if (element instanceof NbtList list) {
+            out.writeByte(list.isEmpty() ? NbtElement.END_TYPE : list.getHeldType());
+            out.writeInt(list.size());
+            for (NbtElement value : list) {
+                writeCanonical(out, value);
+            }
+        } else {
+            element.write(out);
+        }
+    }
+
+    private static String findDifference(String path, NbtElement expected, NbtElement actual) {
+        if (expected == null || actual == null || expected.getType() != actual.getType()) {
+            return path + " (" + expected + " != " + actual + ")";
+        }
+        if (expected instanceof NbtCompound expectedCompound && actual instanceof NbtCompound actualCompound) {
+            final TreeSet<String> keys = new TreeSet<>(expectedCompound.getKeys());
+            keys.addAll(actualCompound.getKeys());
+            for (String key : keys) {
+                final NbtElement expectedValue = expectedCompound.get(key);
+                final NbtElement actualValue = actualCompound.get(key);
+                if (expectedValue == null || !expectedValue.equals(actualValue)) {
+                    return findDifference(path + "/" + key, expectedValue, actualValue);
+                }
+            }
+        } else if (expected instanceof NbtList expectedList && actual instanceof NbtList actualList) {
+            for (int i = 0; i < Math.min(expectedList.size(), actualList.size()); i++) {
+                if (!expectedList.get(i).equals(actualList.get(i))) {
+                    return findDifference(path + "[" + i + "]", expectedList.get(i), actualList.get(i));
+                }
+            }
+            if (expectedList.size() != actualList.size()) {
+                return path + " (" + expectedList.size() + " != " + actualList.size() + " elements)";
+            }
+        }
+        return path + " (" + expected + " != " + actual + ")";
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.ishland.c2me.tests.serializerbenchmark;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.chunk.ProtoChunk;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Compares the reduced allocation chunk serializer with vanilla on synthetic chunks: first
+ * checks that both save the same data, then measures time and allocated bytes per save
+ * (gc.alloc.rate.norm) with JMH.
+ * <p>
+ * Runs inside the test server, as the serializer needs the mixins of C2ME applied. JMH
+ * therefore runs in process instead of forking. Benchmarks are selected with the regex in
+ * {@code -Dcom.ishland.c2me.tests.serializerbenchmark.include} and results are written to
+ * serializer-benchmark.csv in the run directory. A failed round trip exits with a non-zero
+ * status, so that the run can gate changes to the serializer.
+ */
+public class SerializerBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static volatile ServerWorld world;
+
+    static ServerWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * @return false if the round trip failed or the benchmark threw
+     */
+    public static boolean run(MinecraftServer server) {
+        try {
+            System.out.println("Starting SerializerBenchmark");
+            world = server.getOverworld();
+
+            boolean passed = true;
+            for (SyntheticChunks.Shape shape : SyntheticChunks.Shape.values()) {
+                final ProtoChunk chunk = SyntheticChunks.create(world, shape);
+                passed &= RoundTripCheck.check(world, shape, chunk);
+            }
+            if (!passed) {
+                LOGGER.error("Round trip failed, not benchmarking a serializer that saves different data");
+                return false;
+            }
+
+            final Options options = new OptionsBuilder()
+                    .include(System.getProperty("com.ishland.c2me.tests.serializerbenchmark.include", ChunkSerializerBenchmark.class.getName()))
+                    .forks(0)
+                    .warmupIterations(5)
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(2))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.CSV)
+                    .result("serializer-benchmark.csv")
+                    .shouldFailOnError(true)
+                    .build();
+            new Runner(options).run();
+            return true;
+        } catch (Throwable t) {
+            LOGGER.error("Unexpected exception thrown while benchmarking", t);
+            return false;
+        } finally {
+            world = null;
+            System.out.println("Closing benchmark instance");
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.ishland.c2me.tests.serializerbenchmark;
+
+import com.ishland.c2me.base.mixin.access.ISimpleTickScheduler;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IBlendingData;
+import com.ishland.c2me.rewrites.chunk_serializer.mixin.IUpgradeData;
+import com.mojang.serialization.Dynamic;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.ChestBlockEntity;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.fluid.Fluids;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.structure.StructureStart;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.EightWayDirection;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.UpgradeData;
+import net.minecraft.world.gen.chunk.BelowZeroRetrogen;
+import net.minecraft.world.gen.chunk.BlendingData;
+import net.minecraft.world.gen.chunk.ChunkGenerator;
+import net.minecraft.world.gen.structure.Structure;
+import net.minecraft.world.gen.structure.StructureKeys;
+import net.minecraft.world.tick.Tick;
+import net.minecraft.world.tick.TickPriority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic chunks covering the kinds of data the chunk serializers handle.
+ * They are never added to the world, so saving them has no side effects.
+ */
+public final class SyntheticChunks {
+
+    public enum Shape {
+        /** a little terrain, mostly air */
+        SPARSE,
+        /** every section and biome palette populated, from single-valued up to the global palette */
+        DENSE,
+        /** sparse terrain with lots of filled chests */
+        BLOCK_ENTITIES,
+        /** sparse terrain with lots of scheduled block and fluid ticks */
+        TICKS,
+        /** sparse terrain with structure starts and references */
+        STRUCTURES,
+        /** sparse terrain pending an upgrade, blending and below zero retrogen */
+        UPGRADED,
+    }
+
+    // far away from anything the server loads
+    private static final int ORIGIN = 100_000;
+
+    private static final Block[] TICKED_BLOCKS = {Blocks.REDSTONE_WIRE, Blocks.OBSERVER, Blocks.REPEATER, Blocks.SAND, Blocks.FIRE};
+    private static final Fluid[] TICKED_FLUIDS = {Fluids.WATER, Fluids.FLOWING_WATER, Fluids.LAVA, Fluids.FLOWING_LAVA};
+    private static final Item[] CHEST_ITEMS = {Items.COBBLESTONE, Items.IRON_INGOT, Items.DIAMOND_SWORD, Items.BREAD, Items.OAK_LOG, Items.REDSTONE};
+    private static final List<RegistryKey<Structure>> STRUCTURE_STARTS = List.of(
+            StructureKeys.MINESHAFT,
+            StructureKeys.STRONGHOLD,
+            StructureKeys.FORTRESS,
+            StructureKeys.MONUMENT,
+            StructureKeys.VILLAGE_PLAINS
+    );
+
+    private SyntheticChunks() {
+    }
+
+    public static ProtoChunk create(ServerWorld world, Shape shape) {
+        final ChunkPos pos = new ChunkPos(ORIGIN + shape.ordinal(), ORIGIN);
+        final Random random = new Random(shape.ordinal());
+        final Registry<Biome> biomeRegistry = world.getRegistryManager().get(RegistryKeys.BIOME);
+        final boolean upgraded = shape == Shape.UPGRADED;
+        final UpgradeData upgradeData = upgraded ? createUpgradeData(world, random) : UpgradeData.NO_UPGRADE_DATA;
+        final BlendingData blendingData = upgraded ? createBlendingData(random) : null;
+        final ProtoChunk chunk = new ProtoChunk(pos, upgradeData, world, biomeRegistry, blendingData);
+
+        if (shape == Shape.DENSE) {
+            fillDense(chunk, biomeRegistry, random);
+        } else {
+            fillSparse(chunk, random);
+        }
+        switch (shape) {
+            case BLOCK_ENTITIES -> addChests(chunk, random);
+            case TICKS -> addTicks(chunk, random);
+            case STRUCTURES -> addStructures(world, chunk, random);
+            case UPGRADED -> chunk.setBelowZeroRetrogen(createBelowZeroRetrogen(random));
+            default -> {
+            }
+        }
+
+        // saved like a chunk generated up to features, which is not lit yet
+        chunk.setStatus(ChunkStatus.FEATURES);
+        Heightmap.populateHeightmaps(chunk, ChunkStatus.FEATURES.getHeightmapTypes());
+        return chunk;
+    }
+
+    private static void fillSparse(ProtoChunk chunk, Random random) {
+        final ChunkSection[] sections = chunk.getSectionArray();
+        fill(sections[0], Blocks.DEEPSLATE.getDefaultState());
+        fill(sections[1], Blocks.STONE.getDefaultState());
+        final ChunkSection surface = sections[2];
+        for (int i = 0; i < 64; i++) {
+            surface.setBlockState(random.nextInt(16), random.nextInt(16), random.nextInt(16), Blocks.DIRT.getDefaultState(), false);
+        }
+    }
+
+    private static void fillDense(ProtoChunk chunk, Registry<Biome> biomeRegistry, Random random) {
+        final List<BlockState> states = new ArrayList<>();
+        for (BlockState state : Block.STATE_IDS) {
+            if (!state.isAir() && !state.hasBlockEntity()) states.add(state);
+        }
+        final ChunkSection[] sections = chunk.getSectionArray();
+        for (int i = 0; i < sections.length; i++) {
+            // 1 to 512 different states, so every kind of palette is written
+            Collections.shuffle(states, random);
+            final List<BlockState> palette = states.subList(0, Math.min(states.size(), 1 << (i % 10)));
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        sections[i].setBlockState(x, y, z, palette.get(random.nextInt(palette.size())), false);
+                    }
+                }
+            }
+        }
+
+        final List<RegistryEntry<Biome>> biomes = new ArrayList<>(biomeRegistry.streamEntries().toList());
+        Collections.shuffle(biomes, random);
+        final List<RegistryEntry<Biome>> biomePalette = biomes.subList(0, Math.min(biomes.size(), 8));
+        chunk.populateBiomes((x, y, z, noise) -> biomePalette.get(random.nextInt(biomePalette.size())), null);
+    }
+
+    private static void addChests(ProtoChunk chunk, Random random) {
+        final BlockState chest = Blocks.CHEST.getDefaultState();
+        for (int i = 0; i < 1024; i++) {
+            final BlockPos pos = chunk.getPos().getBlockPos(random.nextInt(16), chunk.getBottomY() + 48 + random.nextInt(256), random.nextInt(16));
+            chunk.setBlockState(pos, chest, false);
+            final ChestBlockEntity blockEntity = new ChestBlockEntity(pos, chest);
+            for (int slot = 0; slot < blockEntity.size(); slot += 1 + random.nextInt(4)) {
+                final ItemStack stack = new ItemStack(CHEST_ITEMS[random.nextInt(CHEST_ITEMS.length)], 1 + random.nextInt(64));
+                if (random.nextInt(8) == 0) {
+                    stack.setCount(1);
+                    stack.setCustomName(Text.literal("Item " + i + "/" + slot));
+                }
+                blockEntity.setStack(slot, stack);
+            }
+            chunk.setBlockEntity(blockEntity);
+        }
+    }
+
+    private static void addTicks(ProtoChunk chunk, Random random) {
+        final List<Tick<Block>> blockTicks = ((ISimpleTickScheduler<Block>) chunk.getBlockTickScheduler()).getScheduledTicks();
+        final List<Tick<Fluid>> fluidTicks = ((ISimpleTickScheduler<Fluid>) chunk.getFluidTickScheduler()).getScheduledTicks();
+        final TickPriority[] priorities = TickPriority.values();
+        for (int i = 0; i < 4096; i++) {
+            blockTicks.add(new Tick<>(TICKED_BLOCKS[random.nextInt(TICKED_BLOCKS.length)], randomPos(chunk, random),
+                    random.nextInt(200), priorities[random.nextInt(priorities.length)]));
+            fluidTicks.add(new Tick<>(TICKED_FLUIDS[random.nextInt(TICKED_FLUIDS.length)], randomPos(chunk, random),
+                    random.nextInt(200), priorities[random.nextInt(priorities.length)]));
+        }
+    }
+
+    private static void addStructures(ServerWorld world, ProtoChunk chunk, Random random) {
+        final DynamicRegistryManager registryManager = world.getRegistryManager();
+        final Registry<Structure> structures = registryManager.get(RegistryKeys.STRUCTURE);
+        final ServerChunkManager chunkManager = world.getChunkManager();
+        final ChunkGenerator generator = chunkManager.getChunkGenerator();
+        for (RegistryKey<Structure> key : STRUCTURE_STARTS) {
+            final Structure structure = structures.get(key);
+            if (structure == null) continue;
+            // any biome: the structures are wanted no matter where the chunk is
+            final StructureStart start = structure.createStructureStart(registryManager, generator, generator.getBiomeSource(),
+                    chunkManager.getNoiseConfig(), world.getStructureTemplateManager(), world.getSeed(), chunk.getPos(), 0, chunk, biome -> true);
+            if (start.hasChildren()) {
+                chunk.setStructureStart(structure, start);
+            }
+        }
+        final ChunkPos pos = chunk.getPos();
+        for (Map.Entry<RegistryKey<Structure>, Structure> entry : structures.getEntrySet()) {
+            for (int i = 0; i < 8; i++) {
+                chunk.addStructureReference(entry.getValue(), ChunkPos.toLong(pos.x + random.nextInt(17) - 8, pos.z + random.nextInt(17) - 8));
+            }
+        }
+    }
+
+    private static UpgradeData createUpgradeData(ServerWorld world, Random random) {
+        final UpgradeData upgradeData = new UpgradeData(new NbtCompound(), world);
+        final IUpgradeData access = (IUpgradeData) upgradeData;
+        for (EightWayDirection direction : EightWayDirection.values()) {
+            if (random.nextBoolean()) access.getSidesToUpgrade().add(direction);
+        }
+        final int[][] centerIndices = access.getCenterIndicesToUpgrade();
+        for (int i = 0; i < centerIndices.length; i += 2) {
+            centerIndices[i] = random.ints(1 + random.nextInt(64), 0, 16 * 16 * 16).toArray();
+        }
+        final TickPriority[] priorities = TickPriority.values();
+        for (int i = 0; i < 64; i++) {
+            // neighbor ticks are stored with absolute positions, any will do
+            access.getBlockTicks().add(new Tick<>(TICKED_BLOCKS[random.nextInt(TICKED_BLOCKS.length)],
+                    new BlockPos(random.nextInt(48) - 16, random.nextInt(128), random.nextInt(48) - 16), random.nextInt(200), priorities[random.nextInt(priorities.length)]));
+            access.getFluidTicks().add(new Tick<>(TICKED_FLUIDS[random.nextInt(TICKED_FLUIDS.length)],
+                    new BlockPos(random.nextInt(48) - 16, random.nextInt(128), random.nextInt(48) - 16), random.nextInt(200), priorities[random.nextInt(priorities.length)]));
+        }
+        return upgradeData;
+    }
+
+    private static BlendingData createBlendingData(Random random) {
+        // the old height limit of worlds from before 1.18
+        final NbtCompound nbt = new NbtCompound();
+        nbt.putInt("min_section", 0);
+        nbt.putInt("max_section", 16);
+        final BlendingData blendingData = BlendingData.CODEC.parse(new Dynamic<>(NbtOps.INSTANCE, nbt)).result().orElseThrow();
+        final double[] surfaceHeights = ((IBlendingData) blendingData).getSurfaceHeights();
+        for (int i = 0; i < surfaceHeights.length; i++) {
+            // some left unknown
+            if (random.nextInt(4) != 0) surfaceHeights[i] = 48 + random.nextInt(32);
+        }
+        return blendingData;
+    }
+
+    private static BelowZeroRetrogen createBelowZeroRetrogen(Random random) {
+        final long[] missingBedrock = new long[4];
+        for (int i = 0; i < missingBedrock.length; i++) {
+            missingBedrock[i] = random.nextLong();
+        }
+        final NbtCompound nbt = new NbtCompound();
+        nbt.putString("target_status", Registries.CHUNK_STATUS.getId(ChunkStatus.SPAWN).toString());
+        nbt.putLongArray("missing_bedrock", missingBedrock);
+        return BelowZeroRetrogen.CODEC.parse(new Dynamic<>(NbtOps.INSTANCE, nbt)).result().orElseThrow();
+    }
+
+    private static void fill(ChunkSection section, BlockState state) {
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    section.setBlockState(x, y, z, state, false);
+                }
+            }
+        }
+    }
+
+    private static BlockPos randomPos(ProtoChunk chunk, Random random) {
+        return chunk.getPos().getBlockPos(random.nextInt(16), chunk.getBottomY() + random.nextInt(chunk.getHeight()), random.nextInt(16));
+    }
+
+}